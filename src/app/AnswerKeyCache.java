@@ -0,0 +1,101 @@
+package app;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import model.Question;
+import excel.ExcelSheetSnapshot;
+
+/**
+ * Parsed answer keys shared between evaluated workbooks. Keys are identified by the hash
+ * of the question sheet contents, so workbooks with the same question sheets parse them only once.
+ * @author Pavel Janecka, Karel Petranek
+ */
+class AnswerKeyCache {
+
+	private final ConcurrentMap<String, FutureTask<List<Question>>> keys = new ConcurrentHashMap<String, FutureTask<List<Question>>>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Returns answer key with the given hash, parsing it by the given parser when it is not cached yet.
+	 * Concurrent callers with the same hash wait for a single parse.
+	 * @param hash hash of the question sheets
+	 * @param parser parses the answer key
+	 * @return {@link List} of {@link Question} instances
+	 * @throws InterruptedException when interrupted while waiting for the parser
+	 */
+	public List<Question> get(String hash, Callable<List<Question>> parser) throws InterruptedException {
+		FutureTask<List<Question>> task = new FutureTask<List<Question>>(parser);
+		FutureTask<List<Question>> existing = keys.putIfAbsent(hash, task);
+		if(existing == null) {
+			misses.incrementAndGet();
+			task.run();
+		} else {
+			hits.incrementAndGet();
+			task = existing;
+		}
+		
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			keys.remove(hash, task);
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			if(e.getCause() instanceof InterruptedException) throw (InterruptedException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+	
+	/**
+	 * @return number of keys found in the cache
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return number of keys that had to be parsed
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Computes hash of the contents of question sheets
+	 * @param sheets snapshots of the question sheets in workbook order
+	 * @param columns number of columns of each sheet included in the hash
+	 * @return hex string of the hash
+	 */
+	public static String hashOf(List<ExcelSheetSnapshot> sheets, int columns) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			for(ExcelSheetSnapshot sheet : sheets) {
+				for(int y = 0; y < sheet.getRowCount(); y++) {
+					for(int x = 0; x < columns; x++) {
+						digest.update(sheet.stringAt(x, y).getBytes("UTF-8"));
+						digest.update((byte) '\t');
+					}
+					digest.update((byte) '\n');
+				}
+				digest.update((byte) 0);
+			}
+			
+			StringBuilder hex = new StringBuilder();
+			for(byte b : digest.digest()) {
+				hex.append(String.format("%02x", b & 0xff));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package app;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Evaluates many workbooks (e.g. one per course section) on a bounded pool of workers.
+ * Workbooks sharing the same question sheets parse them only once.
+ * @author Pavel Janecka, Karel Petranek
+ */
+public class BatchEvaluationMain {
+
+	private static final String INPUT_EXTENSION = ".xlsx";
+	private static final String OUTPUT_SUFFIX = "_";
+	
+	/**
+	 * Result of evaluation of one workbook
+	 */
+	private static class FileResult {
+		File input;
+		int students;
+		long nanos;
+		Exception error;
+	}
+	
+	/**
+	 * Finds input workbooks. The pattern is either a directory, from which all workbooks except the outputs
+	 * of a previous run are taken, or a file name glob such as data/*.xlsx.
+	 * @param pattern directory or glob
+	 * @return {@link List} of input files sorted by name
+	 */
+	static List<File> findInputs(String pattern) {
+		List<File> result = new ArrayList<File>();
+		File file = new File(pattern);
+		File[] files = null;
+		
+		if(file.isDirectory()) {
+			files = file.listFiles();
+			if(files == null) return result;
+			for(File f : files) {
+				if(f.isFile() && f.getName().endsWith(INPUT_EXTENSION) && !f.getName().endsWith(OUTPUT_SUFFIX + INPUT_EXTENSION)) result.add(f);
+			}
+		} else {
+			File dir = file.getParentFile() == null ? new File(".") : file.getParentFile();
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + file.getName());
+			files = dir.listFiles();
+			if(files == null) return result;
+			for(File f : files) {
+				if(f.isFile() && matcher.matches(f.toPath().getFileName())) result.add(f);
+			}
+		}
+		File[] sorted = result.toArray(new File[result.size()]);
+		Arrays.sort(sorted);
+		return Arrays.asList(sorted);
+	}
+	
+	/**
+	 * Returns path of the output workbook for the given input, e.g. data_c01.xlsx is written to data_c01_.xlsx
+	 * @param input input workbook
+	 * @param outputDir directory of the output workbooks
+	 * @return output file
+	 */
+	static File outputFor(File input, File outputDir) {
+		String name = input.getName();
+		int dot = name.lastIndexOf('.');
+		String base = dot < 0 ? name : name.substring(0, dot);
+		String extension = dot < 0 ? INPUT_EXTENSION : name.substring(dot);
+		return new File(outputDir, base + OUTPUT_SUFFIX + extension);
+	}
+	
+	/**
+	 * Evaluates all given workbooks
+	 * @param inputs input workbooks
+	 * @param outputDir directory of the output workbooks
+	 * @param jobs number of workbooks evaluated at once
+	 * @param options options of the evaluation of each workbook
+	 * @return results in the order of inputs
+	 * @throws InterruptedException when interrupted while waiting for the workers
+	 */
+	static List<FileResult> evaluateAll(List<File> inputs, final File outputDir, int jobs, EvaluationOptions options) throws InterruptedException {
+		final EvaluationMain evaluation = new EvaluationMain(options);
+		ExecutorService workers = Executors.newFixedThreadPool(jobs);
+		List<Future<FileResult>> futures = new ArrayList<Future<FileResult>>(inputs.size());
+		List<FileResult> results = new ArrayList<FileResult>(inputs.size());
+		
+		try {
+			for(final File input : inputs) {
+				futures.add(workers.submit(new Callable<FileResult>() {
+					@Override
+					public FileResult call() {
+						FileResult result = new FileResult();
+						result.input = input;
+						long start = System.nanoTime();
+						try {
+							result.students = evaluation.evaluate(input.getPath(), outputFor(input, outputDir).getPath());
+						} catch (Exception e) {
+							result.error = e;
+						}
+						result.nanos = System.nanoTime() - start;
+						return result;
+					}
+				}));
+			}
+			for(Future<FileResult> future : futures) {
+				try {
+					results.add(future.get());
+				} catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		} finally {
+			workers.shutdown();
+			evaluation.shutdown();
+		}
+		if(options.getMetricsFile() != null) {
+			try {
+				evaluation.getMetrics().writeJson(options.getMetricsFile());
+			} catch (IOException e) {
+				System.out.println("Cannot write metrics " + options.getMetricsFile() + ": " + e.getMessage());
+			}
+		}
+		return results;
+	}
+	
+	/**
+	 * Prints per-file timing and throughput of the batch
+	 * @param results results of the batch
+	 * @param wallNanos wall-clock time of the whole batch
+	 */
+	static void printSummary(List<FileResult> results, long wallNanos) {
+		int students = 0;
+		int failed = 0;
+		
+		System.out.println(String.format("%-40s %10s %12s %12s", "File", "Students", "Time [ms]", "Students/s"));
+		for(FileResult result : results) {
+			if(result.error != null) {
+				failed++;
+				System.out.println(String.format("%-40s FAILED: %s", result.input.getName(), result.error));
+				continue;
+			}
+			students += result.students;
+			System.out.println(String.format("%-40s %10d %12.1f %12.1f", result.input.getName(), result.students,
+					result.nanos / 1e6, result.students / (result.nanos / 1e9)));
+		}
+		System.out.println(String.format("Total: %d files (%d failed), %d students in %.1f ms, %.1f students/s",
+				results.size(), failed, students, wallNanos / 1e6, students / (wallNanos / 1e9)));
+	}
+	
+	/**
+	 * @return usage description of the command line arguments
+	 */
+	private static String usage() {
+		return "Usage: BatchEvaluationMain --inputs DIR|GLOB --output-dir DIR [--jobs N] [evaluation options]\n"
+			+ "  --inputs DIR|GLOB   directory with workbooks (outputs *_.xlsx are skipped) or a glob such as data/*.xlsx\n"
+			+ "  --output-dir DIR    directory of the output workbooks, input.xlsx is written to input_.xlsx\n"
+			+ "  --jobs N            number of workbooks evaluated at once (default number of processors)\n"
+			+ EvaluationOptions.usage();
+	}
+	
+	/**
+	 * @param args String
+	 */
+	public static void main(String[] args) {
+		String inputs = null;
+		String outputDir = null;
+		int jobs = Runtime.getRuntime().availableProcessors();
+		List<String> evaluationArgs = new ArrayList<String>();
+		EvaluationOptions options = null;
+		
+		try {
+			for(int i = 0; i < args.length; i++) {
+				if(args[i].equals("--inputs") && i + 1 < args.length) {
+					inputs = args[++i];
+				} else if(args[i].equals("--output-dir") && i + 1 < args.length) {
+					outputDir = args[++i];
+				} else if(args[i].equals("--jobs") && i + 1 < args.length) {
+					jobs = Integer.parseInt(args[++i]);
+					if(jobs < 1) throw new IllegalArgumentException("Number of jobs must be positive");
+				} else {
+					evaluationArgs.add(args[i]);
+				}
+			}
+			if(inputs == null || outputDir == null) throw new IllegalArgumentException("Inputs and output directory are required");
+			options = EvaluationOptions.fromArgs(evaluationArgs.toArray(new String[evaluationArgs.size()]));
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println(usage());
+			return;
+		}
+		
+		List<File> files = findInputs(inputs);
+		if(files.isEmpty()) {
+			System.out.println("No workbooks found in " + inputs);
+			return;
+		}
+		new File(outputDir).mkdirs();
+		
+		try {
+			long start = System.nanoTime();
+			List<FileResult> results = evaluateAll(files, new File(outputDir), jobs, options);
+			printSummary(results, System.nanoTime() - start);
+		} catch (InterruptedException e) {
+			System.out.println("Interrupted");
+		}
+	}
+}
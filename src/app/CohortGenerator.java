@@ -0,0 +1,265 @@
+package app;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import model.Model;
+
+import excel.ExcelSheet;
+import excel.ExcelWorkbook;
+
+/**
+ * Generates workbooks with a synthetic cohort of students in the layout read by {@link EvaluationMain}:
+ * question sheets Q1..Qn with reference answers and models and result sheets with one column per student.
+ * The workbook is written through a streaming workbook, so the number of students is limited only by disk space.
+ * @author Pavel Janecka, Karel Petranek
+ */
+public class CohortGenerator {
+
+	/**
+	 * Maximal number of students on one result sheet, the first column of XLSX sheet holds question numbers
+	 */
+	private static final int MAX_STUDENTS_PER_SHEET = 16383;
+	
+	/**
+	 * Values of answer variables, as in the Dehnadi test
+	 */
+	private static final int[] VARIABLE_VALUES = {0, 3, 5, 7, 10, 20, 30, 40, 50};
+	
+	private int students = 1000;
+	private int questions = 12;
+	private int choices = 2;
+	private int sheets = 0;
+	private int keyAnswers = 10;
+	private long seed = 1;
+	
+	/**
+	 * @param students number of generated students
+	 */
+	public void setStudents(int students) {
+		if(students < 1) throw new IllegalArgumentException("Number of students must be positive");
+		this.students = students;
+	}
+	
+	/**
+	 * @param questions number of questions of the test
+	 */
+	public void setQuestions(int questions) {
+		if(questions < 1) throw new IllegalArgumentException("Number of questions must be positive");
+		this.questions = questions;
+	}
+	
+	/**
+	 * @param choices maximal number of choices of one answer
+	 */
+	public void setChoices(int choices) {
+		if(choices < 1) throw new IllegalArgumentException("Number of choices must be positive");
+		this.choices = choices;
+	}
+	
+	/**
+	 * Sets number of result sheets the students are spread across
+	 * @param sheets number of result sheets, 0 for the least number of sheets that can hold all students
+	 */
+	public void setSheets(int sheets) {
+		if(sheets < 0) throw new IllegalArgumentException("Number of sheets cannot be negative");
+		this.sheets = sheets;
+	}
+	
+	/**
+	 * @param keyAnswers number of reference answers of each question
+	 */
+	public void setKeyAnswers(int keyAnswers) {
+		if(keyAnswers < 1) throw new IllegalArgumentException("Number of reference answers must be positive");
+		this.keyAnswers = keyAnswers;
+	}
+	
+	/**
+	 * @param seed seed of the random generator, the same seed gives the same workbook
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+	
+	/**
+	 * Generates the workbook
+	 * @param outputFile path to the generated workbook
+	 * @throws IOException when the workbook cannot be written
+	 * @throws IllegalArgumentException when the students don't fit to the given number of sheets
+	 */
+	public void generate(String outputFile) throws IOException, IllegalArgumentException {
+		int sheetCount = sheets > 0 ? sheets : (students + MAX_STUDENTS_PER_SHEET - 1) / MAX_STUDENTS_PER_SHEET;
+		if((students + sheetCount - 1) / sheetCount > MAX_STUDENTS_PER_SHEET) {
+			throw new IllegalArgumentException(students + " students don't fit to " + sheetCount + " sheets, at most " + MAX_STUDENTS_PER_SHEET + " students per sheet");
+		}
+		
+		Random random = new Random(seed);
+		// Every row is complete before the next one is created, keep a single row per sheet in memory
+		ExcelWorkbook workbook = ExcelWorkbook.createStreaming(1);
+		
+		List<List<String>> key = new ArrayList<List<String>>(questions);
+		for(int q = 1; q <= questions; q++) {
+			key.add(writeQuestionSheet(workbook, random, q));
+		}
+		
+		int first = 0;
+		for(int s = 0; s < sheetCount; s++) {
+			int count = (students - first) / (sheetCount - s);
+			writeResultSheet(workbook, random, sheetCount == 1 ? "Results" : "Results " + (s + 1), key, first, count);
+			first += count;
+		}
+		workbook.write(outputFile);
+	}
+	
+	/**
+	 * Writes question sheet with random reference answers and models
+	 * @param workbook {@link ExcelWorkbook} instance
+	 * @param random random generator
+	 * @param question question number
+	 * @return reference answers of the question
+	 */
+	private List<String> writeQuestionSheet(ExcelWorkbook workbook, Random random, int question) {
+		ExcelSheet sheet = workbook.createSheet("Q" + question);
+		sheet.createCell(0, 0).setValue("#" + question);
+		
+		// Reference answers have to be unique, the answer space may be smaller than requested
+		Set<String> answers = new LinkedHashSet<String>();
+		for(int attempt = 0; answers.size() < keyAnswers && attempt < keyAnswers * 10; attempt++) {
+			answers.add(randomAnswer(random));
+		}
+		
+		int row = 1;
+		for(String answer : answers) {
+			sheet.createCell(0, row).setValue(answer);
+			sheet.createCell(1, row).setValue(randomModels(random));
+			row++;
+		}
+		return new ArrayList<String>(answers);
+	}
+	
+	/**
+	 * Writes result sheet with answers of the given range of students. Most students choose one of the
+	 * reference answers, the rest answers randomly or leaves the answer blank.
+	 * @param workbook {@link ExcelWorkbook} instance
+	 * @param random random generator
+	 * @param name sheet name
+	 * @param key reference answers of all questions
+	 * @param first index of the first student
+	 * @param count number of students on the sheet
+	 */
+	private void writeResultSheet(ExcelWorkbook workbook, Random random, String name, List<List<String>> key, int first, int count) {
+		ExcelSheet sheet = workbook.createSheet(name);
+		sheet.createCell(0, 0).setValue("Code");
+		for(int i = 0; i < count; i++) {
+			sheet.createCell(i + 1, 0).setValue(String.format("S%07d", first + i + 1));
+		}
+		
+		for(int q = 1; q <= questions; q++) {
+			List<String> answers = key.get(q - 1);
+			sheet.createCell(0, q).setValue("#" + q);
+			for(int i = 0; i < count; i++) {
+				int kind = random.nextInt(20);
+				if(kind == 0) continue;
+				sheet.createCell(i + 1, q).setValue(kind < 4 ? randomAnswer(random) : answers.get(random.nextInt(answers.size())));
+			}
+		}
+		sheet.createCell(0, questions + 1).setValue("Results");
+	}
+	
+	/**
+	 * @param random random generator
+	 * @return answer with one to {@link #choices} choices of two or three variables
+	 */
+	private String randomAnswer(Random random) {
+		StringBuilder res = new StringBuilder();
+		int count = 1 + random.nextInt(choices);
+		int variables = 2 + random.nextInt(2);
+		for(int c = 0; c < count; c++) {
+			if(c > 0) res.append('|');
+			for(int v = 0; v < variables; v++) {
+				if(v > 0) res.append(',');
+				res.append(VARIABLE_VALUES[random.nextInt(VARIABLE_VALUES.length)]);
+			}
+		}
+		return res.toString();
+	}
+	
+	/**
+	 * @param random random generator
+	 * @return one to three models, with or without submodels, in the format read by {@link Model#parseModels(String)}
+	 */
+	private static String randomModels(Random random) {
+		StringBuilder res = new StringBuilder();
+		int count = 1 + random.nextInt(3);
+		int mains = Model.MainModel.values().length - 1;
+		int subs = Model.SubModel.values().length - 1;
+		for(int i = 0; i < count; i++) {
+			if(i > 0) res.append('|');
+			res.append("M").append(1 + random.nextInt(mains));
+			int sub = random.nextInt(subs + 1);
+			if(sub > 0) res.append(",S").append(sub);
+		}
+		return res.toString();
+	}
+	
+	/**
+	 * @return usage description of the command line arguments
+	 */
+	private static String usage() {
+		return "Usage: CohortGenerator --output FILE [options]\n"
+			+ "  --output FILE       generated workbook\n"
+			+ "  --students N        number of students (default 1000)\n"
+			+ "  --questions N       number of questions (default 12)\n"
+			+ "  --choices N         maximal number of choices of one answer (default 2)\n"
+			+ "  --sheets N          number of result sheets (default as few as possible, at most " + MAX_STUDENTS_PER_SHEET + " students per sheet)\n"
+			+ "  --key-answers N     reference answers per question (default 10)\n"
+			+ "  --seed N            seed of the random generator (default 1)\n";
+	}
+	
+	/**
+	 * @param args String
+	 */
+	public static void main(String[] args) {
+		CohortGenerator generator = new CohortGenerator();
+		String output = null;
+		
+		try {
+			for(int i = 0; i < args.length; i++) {
+				if(args[i].equals("--output") && i + 1 < args.length) {
+					output = args[++i];
+				} else if(args[i].equals("--students") && i + 1 < args.length) {
+					generator.setStudents(Integer.parseInt(args[++i]));
+				} else if(args[i].equals("--questions") && i + 1 < args.length) {
+					generator.setQuestions(Integer.parseInt(args[++i]));
+				} else if(args[i].equals("--choices") && i + 1 < args.length) {
+					generator.setChoices(Integer.parseInt(args[++i]));
+				} else if(args[i].equals("--sheets") && i + 1 < args.length) {
+					generator.setSheets(Integer.parseInt(args[++i]));
+				} else if(args[i].equals("--key-answers") && i + 1 < args.length) {
+					generator.setKeyAnswers(Integer.parseInt(args[++i]));
+				} else if(args[i].equals("--seed") && i + 1 < args.length) {
+					generator.setSeed(Long.parseLong(args[++i]));
+				} else {
+					throw new IllegalArgumentException("Unknown argument " + args[i]);
+				}
+			}
+			if(output == null) throw new IllegalArgumentException("Output file is required");
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println(usage());
+			return;
+		}
+		
+		try {
+			generator.generate(output);
+			System.out.println("Done!");
+		} catch (IOException e) {
+			System.out.println("Cannot write workbook " + output + ": " + e.getMessage());
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+		}
+	}
+}
@@ -1,20 +1,48 @@
 package app;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
 
 import model.Answer;
+import model.AnswerCache;
+import model.AnswerParser;
+import model.AnswerKeyCodec;
 import model.Evaluation;
 import model.Model;
 import model.ModelsAndAnswer;
+import model.ParallelEvaluation;
 import model.Question;
+import store.AnswerStore;
+import store.StoreEvaluation;
 
 import org.apache.poi.hssf.util.HSSFColor;
 
+import metrics.Metrics;
+import csv.CsvReader;
+import csv.CsvWriter;
 import excel.ExcelCell;
 import excel.ExcelColumn;
 import excel.ExcelRow;
 import excel.ExcelSheet;
+import excel.ExcelSheetSnapshot;
 import excel.ExcelWorkbook;
+import excel.XlsxPatcher;
 
 /**
  * 
@@ -26,8 +54,6 @@ import excel.ExcelWorkbook;
  */
 public class EvaluationMain {
 
-	private final String FILE_INPUT_NAME = "data/data_c01.xlsx";
-	private final String FILE_OUTPUT_NAME = "data/data_c01_.xlsx";
 	private final String QUESTION_SHEET_NAME_REGEXP = "Q\\d*";
 	private final String QUESTION_NUMBER_CHAR = "#";
 	private final int QUESTION_NUMBER_COLUMN_INDEX = 0;
@@ -36,31 +62,193 @@ public class EvaluationMain {
 	private final String RESULT_CORNER_STRING = "Code";
 	private final String RESULT_CELL_STRING = "Results";
 	private final String RESULT_SHEET_NAME_REGEXP = "Results.*";
+	private final Pattern QUESTION_SHEET_NAME_PATTERN = Pattern.compile(QUESTION_SHEET_NAME_REGEXP);
+	private final Pattern RESULT_SHEET_NAME_PATTERN = Pattern.compile(RESULT_SHEET_NAME_REGEXP);
 	
 	private final String FONT_DEFAULT = "default";
 	private final String FONT_RED = "red";
 	
+	private final int ANSWER_CACHE_SIZE = 1024;
+	
+	private final EvaluationOptions options;
+	private final AnswerKeyCache answerKeys = new AnswerKeyCache();
+	private final AnswerCache studentAnswers = new AnswerCache(ANSWER_CACHE_SIZE);
+	private final Metrics metrics = new Metrics();
+	// Wall time of the run, from the start of the first evaluated workbook to the end of the last one
+	private final Object runLock = new Object();
+	private long runStart = 0;
+	private long runEnd = 0;
+	private boolean runStarted = false;
+	private volatile boolean scoreCacheUsed = false;
+	private ParallelEvaluation parallelEvaluation = null;
+	private ExecutorService sheetExecutor = null;
+	
 	/**
 	 * Default constructor
 	 */
 	public EvaluationMain() {
+		this(new EvaluationOptions());
+	}
+	
+	/**
+	 * Creates the evaluation with the given options. The instance can evaluate more workbooks,
+	 * also concurrently, call {@link #shutdown()} when done.
+	 * @param options {@link EvaluationOptions} instance
+	 */
+	public EvaluationMain(EvaluationOptions options) {
+		this.options = options;
+		if(options.getParallelism() > 1) parallelEvaluation = new ParallelEvaluation(options.getParallelism());
+		if(options.isParallelSheets()) sheetExecutor = Executors.newFixedThreadPool(options.getParallelism());
+	}
+	
+	/**
+	 * Evaluates all result sheets of the input workbook and writes the output workbook
+	 * @param inputFile path to the input workbook
+	 * @param outputFile path to the output workbook
+	 * @return number of evaluated students
+	 * @throws IOException when a workbook cannot be read or written
+	 * @throws InterruptedException when interrupted while waiting for parallel evaluation
+	 */
+	public int evaluate(String inputFile, String outputFile) throws IOException, InterruptedException {
+		long start = System.nanoTime();
+		try {
+			if(CsvReader.isDelimitedFile(inputFile)) return evaluateCsv(inputFile, outputFile);
+			return evaluateWorkbook(inputFile, outputFile);
+		} finally {
+			recordRun(start, System.nanoTime());
+		}
+	}
+	
+	/**
+	 * Extends the wall time of the run by one evaluated workbook, or by one request of
+	 * {@link EvaluationServer}. Evaluations running concurrently overlap, so the run is not a sum of their durations.
+	 * @param start start of the evaluation from {@link System#nanoTime()}
+	 * @param end end of the evaluation from {@link System#nanoTime()}
+	 */
+	void recordRun(long start, long end) {
+		synchronized(runLock) {
+			if(!runStarted || start - runStart < 0) runStart = start;
+			if(!runStarted || end - runEnd > 0) runEnd = end;
+			runStarted = true;
+		}
+	}
+	
+	/**
+	 * Evaluates all result sheets of the input workbook and writes the output workbook
+	 * @param inputFile path to the input workbook
+	 * @param outputFile path to the output workbook
+	 * @return number of evaluated students
+	 * @throws IOException when a workbook cannot be read or written
+	 * @throws InterruptedException when interrupted while waiting for parallel evaluation
+	 */
+	private int evaluateWorkbook(String inputFile, String outputFile) throws IOException, InterruptedException {
 		List<Question> questions = null;
-		int[] evaluation = null;
+		Map<String, int[]> evaluations = null;
+		Map<String, Integer> resultRows = options.isPatchWrite() || options.isStreamingWrite() ? new HashMap<String, Integer>() : null;
+		StudentScoreCache scoreCache = null;
+		int students = 0;
 		
+		long start = System.nanoTime();
+		// Streaming read loads only the question and result sheets, other sheets are never read
+		ExcelWorkbook source = options.isStreamingRead()
+				? ExcelWorkbook.openReadOnly(inputFile, QUESTION_SHEET_NAME_PATTERN, RESULT_SHEET_NAME_PATTERN)
+				: new ExcelWorkbook(inputFile);
 		try {
-			ExcelWorkbook workbook = new ExcelWorkbook(FILE_INPUT_NAME);
+			start = metrics.time("phase.open", start);
+			List<ExcelSheetSnapshot> questionSheets = snapshotQuestionSheets(source);
+			String keyHash = AnswerKeyCache.hashOf(questionSheets, QUESTION_NUMBER_COLUMN_INDEX + 2);
+			if(options.isIncremental()) scoreCache = StudentScoreCache.load(StudentScoreCache.fileFor(inputFile), keyHash);
+			questions = loadQuestions(questionSheets, keyHash, options.isKeyCache() ? new File(inputFile + ".keycache") : null);
+			start = metrics.time("phase.questions", start);
+			evaluations = evaluateResultSheets(source, questions, scoreCache, resultRows);
+			start = metrics.time("phase.evaluate", start);
+		} finally {
+			source.close();
+		}
+		
+		if(options.isPatchWrite()) {
+			writePatchedWorkbook(inputFile, outputFile, evaluations, resultRows);
+		} else if(options.isStreamingWrite()) {
+			ExcelWorkbook workbook = ExcelWorkbook.createStreaming(options.getWriteWindowSize());
 			createCellStyles(workbook);
-			questions = loadQuestions(workbook);
-			for(ExcelSheet sheet : workbook.getSheetsByPattern(RESULT_SHEET_NAME_REGEXP)) {
-				System.out.println("Sheet " + sheet.getName() + " evaluation started");
-				evaluation = resolveAnswersAndCountEvaluation(sheet, questions);
-				writeEvaluationToSheet(workbook, sheet, evaluation);
+			ExcelWorkbook input = ExcelWorkbook.openReadOnly(inputFile);
+			try {
+				copyWorkbookWithEvaluations(input, workbook, evaluations, resultRows);
+			} finally {
+				input.close();
 			}
-			workbook.write(FILE_OUTPUT_NAME);
-			System.out.println("Done!");
-		} catch (Exception e) {
-			e.printStackTrace();
+			workbook.write(outputFile);
+		} else {
+			// Read-only workbook cannot be written, load the full workbook only for the output
+			ExcelWorkbook workbook = source.isReadOnly() ? new ExcelWorkbook(inputFile) : source;
+			createCellStyles(workbook);
+			for(Map.Entry<String, int[]> entry : evaluations.entrySet()) {
+				writeEvaluationToSheet(workbook, workbook.getSheetByName(entry.getKey()), entry.getValue());
+			}
+			workbook.write(outputFile);
+		}
+		metrics.time("phase.write", start);
+		
+		if(scoreCache != null) {
+			scoreCache.save();
+			metrics.add("scorecache.hits", scoreCache.getHits());
+			metrics.add("scorecache.misses", scoreCache.getMisses());
+			scoreCacheUsed = true;
+		}
+		for(int[] evaluation : evaluations.values()) {
+			students += evaluation.length;
 		}
+		metrics.add("workbooks", 1);
+		return students;
+	}
+	
+	/**
+	 * @return cache of parsed student answers shared by all evaluated workbooks
+	 */
+	public AnswerCache getAnswerCache() {
+		return studentAnswers;
+	}
+	
+	/**
+	 * Returns metrics of all workbooks evaluated so far, with rates and cache statistics updated
+	 * @return {@link Metrics} instance
+	 */
+	public Metrics getMetrics() {
+		long students = metrics.counter("students").get();
+		long runNanos;
+		synchronized(runLock) {
+			runNanos = runEnd - runStart;
+		}
+		metrics.gauge("throughput.studentsPerSecond", runNanos == 0 ? Double.NaN : students / (runNanos / 1e9));
+		metrics.gauge("answers.parsed", studentAnswers.getMisses());
+		metrics.gauge("answers.reused", studentAnswers.getHits());
+		metrics.gauge("answers.hitRate", hitRate(studentAnswers.getHits(), studentAnswers.getMisses()));
+		metrics.gauge("keycache.memory.hitRate", hitRate(answerKeys.getHits(), answerKeys.getMisses()));
+		if(options.isKeyCache()) metrics.gauge("keycache.file.hitRate", hitRate(metrics.counter("keycache.file.hits").get(), metrics.counter("keycache.file.misses").get()));
+		if(scoreCacheUsed) metrics.gauge("scorecache.hitRate", hitRate(metrics.counter("scorecache.hits").get(), metrics.counter("scorecache.misses").get()));
+		return metrics;
+	}
+	
+	private static double hitRate(long hits, long misses) {
+		return hits + misses == 0 ? Double.NaN : (double) hits / (hits + misses);
+	}
+	
+	/**
+	 * Prints a warning and counts it by its kind
+	 * @param kind kind of the warning, counted as "warnings.kind"
+	 * @param message printed message
+	 */
+	private void warn(String kind, String message) {
+		metrics.add("warnings." + kind, 1);
+		System.out.println(message);
+	}
+	
+	/**
+	 * Stops the worker threads
+	 */
+	public void shutdown() {
+		if(parallelEvaluation != null) parallelEvaluation.shutdown();
+		if(sheetExecutor != null) sheetExecutor.shutdown();
 	}
 	
 	/**
@@ -73,86 +261,429 @@ public class EvaluationMain {
 	}
 
 	/**
-	 * Loads all questions from {@link ExcelWorkbook} instance
+	 * Takes snapshots of all question sheets of {@link ExcelWorkbook} instance
 	 * @param workbook {@link ExcelWorkbook} instance
+	 * @return {@link List} of {@link ExcelSheetSnapshot} instances
+	 */
+	private List<ExcelSheetSnapshot> snapshotQuestionSheets(ExcelWorkbook workbook) {
+		List<ExcelSheetSnapshot> sheets = new ArrayList<ExcelSheetSnapshot>();
+		
+		// Workbook is not thread safe, take snapshots of all sheets before parsing
+		for(ExcelSheet sheet : workbook.getSheetsByPattern(QUESTION_SHEET_NAME_PATTERN)) {
+			sheets.add(sheet.snapshot());
+		}
+		return sheets;
+	}
+	
+	/**
+	 * Loads all questions from snapshots of question sheets. Questions of workbooks with the same
+	 * question sheets are parsed only once, a parsed key is also read from and stored to the key cache file.
+	 * @param sheets {@link List} of {@link ExcelSheetSnapshot} instances
+	 * @param keyHash hash of the question sheets
+	 * @param keyCacheFile binary file with the parsed key or null to always parse the sheets
 	 * @return {@link List} of {@link Question} instances
 	 * @throws NumberFormatException when question number have incorrect format
+	 * @throws InterruptedException when interrupted while waiting for parallel parsing
+	 * @see AnswerKeyCache#hashOf(List, int)
 	 */
-	private List<Question> loadQuestions(ExcelWorkbook workbook) throws NumberFormatException {
-		String tmpCellString = null;
-		int tmpQID = -1;
-		List<Question> questions = new ArrayList<Question>();
-		List<ModelsAndAnswer> answers = null;
-		List<ExcelCell> tmpAnswer = null;
-		List<ExcelCell> tmpModel = null;
-		
-		for(ExcelSheet sheet : workbook.getSheetsByPattern(QUESTION_SHEET_NAME_REGEXP)) {
-			tmpCellString = sheet.stringAt(QUESTION_NUMBER_COLUMN_INDEX, 0);
-			if(tmpCellString.startsWith(QUESTION_NUMBER_CHAR)) {
-				tmpQID = Integer.valueOf(tmpCellString.replace(QUESTION_NUMBER_CHAR, ""));
-				answers = new ArrayList<ModelsAndAnswer>();
-				tmpAnswer = sheet.getColumn(QUESTION_NUMBER_COLUMN_INDEX);
-				tmpModel = sheet.getColumn(QUESTION_NUMBER_COLUMN_INDEX + 1);
-				for(int i = 0; i < tmpAnswer.size() && i < tmpModel.size(); i++) {
-					if(!tmpAnswer.get(i).asString().isEmpty() && !tmpModel.get(i).asString().isEmpty()) {
-						answers.add(new ModelsAndAnswer(new Answer(tmpAnswer.get(i).asString(), tmpQID), Model.parseModels(tmpModel.get(i).asString())));
+	private List<Question> loadQuestions(final List<ExcelSheetSnapshot> sheets, final String keyHash, final File keyCacheFile) throws NumberFormatException, InterruptedException {
+		return answerKeys.get(keyHash, new Callable<List<Question>>() {
+			@Override
+			public List<Question> call() throws Exception {
+				if(keyCacheFile == null) return parseQuestions(sheets);
+				
+				try {
+					List<Question> questions = AnswerKeyCodec.read(keyCacheFile, keyHash);
+					if(questions != null) {
+						metrics.add("keycache.file.hits", 1);
+						reportKeyWarnings(sheets, questions);
+						return questions;
 					}
+				} catch (IOException e) {
+					warn("key-cache-io", "Cannot read answer key cache " + keyCacheFile + ": " + e.getMessage());
 				}
-				questions.add(new Question(tmpQID, answers));
-			} else {
-				System.out.println("Question on sheet " + sheet.getName() + " does not contain appropriate question number on first row");
+				
+				metrics.add("keycache.file.misses", 1);
+				List<Question> questions = parseQuestions(sheets);
+				try {
+					AnswerKeyCodec.write(keyCacheFile, keyHash, questions);
+				} catch (IOException e) {
+					warn("key-cache-io", "Cannot write answer key cache " + keyCacheFile + ": " + e.getMessage());
+				}
+				return questions;
+			}
+		});
+	}
+	
+	/**
+	 * Parses questions from snapshots of question sheets
+	 * @param sheets {@link List} of {@link ExcelSheetSnapshot} instances
+	 * @return {@link List} of {@link Question} instances
+	 * @throws NumberFormatException when question number have incorrect format
+	 * @throws InterruptedException when interrupted while waiting for parallel parsing
+	 */
+	private List<Question> parseQuestions(List<ExcelSheetSnapshot> sheets) throws NumberFormatException, InterruptedException {
+		List<Question> questions = new ArrayList<Question>();
+		
+		if(sheetExecutor != null) {
+			List<Future<Question>> futures = new ArrayList<Future<Question>>(sheets.size());
+			for(final ExcelSheetSnapshot sheet : sheets) {
+				futures.add(sheetExecutor.submit(new Callable<Question>() {
+					@Override
+					public Question call() throws Exception {
+						return parseQuestion(sheet);
+					}
+				}));
+			}
+			for(Future<Question> future : futures) {
+				Question question = getResult(future);
+				if(question != null) questions.add(question);
+			}
+		} else {
+			for(ExcelSheetSnapshot sheet : sheets) {
+				Question question = parseQuestion(sheet);
+				if(question != null) questions.add(question);
 			}
 		}
 		return questions;
 	}
+	
+	/**
+	 * Parses a question from the snapshot of a question sheet
+	 * @param sheet {@link ExcelSheetSnapshot} instance
+	 * @return {@link Question} instance or null when the sheet does not contain question number
+	 * @throws NumberFormatException when question number have incorrect format
+	 */
+	private Question parseQuestion(ExcelSheetSnapshot sheet) throws NumberFormatException {
+		String tmpCellString = sheet.stringAt(QUESTION_NUMBER_COLUMN_INDEX, 0);
+		String tmpAnswer = null;
+		String tmpModel = null;
+		
+		if(checkQuestionSheet(sheet)) {
+			int tmpQID = Integer.valueOf(tmpCellString.replace(QUESTION_NUMBER_CHAR, ""));
+			List<ModelsAndAnswer> answers = new ArrayList<ModelsAndAnswer>();
+			AnswerParser parser = new AnswerParser();
+			for(int i = 0; i < sheet.getRowCount(); i++) {
+				tmpAnswer = sheet.stringAt(QUESTION_NUMBER_COLUMN_INDEX, i);
+				tmpModel = sheet.stringAt(QUESTION_NUMBER_COLUMN_INDEX + 1, i);
+				if(!tmpAnswer.isEmpty() && !tmpModel.isEmpty()) {
+					answers.add(new ModelsAndAnswer(parseKeyAnswer(tmpAnswer, tmpQID, parser), Model.parseModels(tmpModel)));
+				}
+			}
+			reportSkippedChoices(parser, "sheet " + sheet.getName());
+			return reportIssues(new Question(tmpQID, answers), "sheet " + sheet.getName());
+		} else {
+			return null;
+		}
+	}
+	
+	/**
+	 * Parses an answer of the answer key
+	 * @param input answer string
+	 * @param questionId question number
+	 * @param parser {@link AnswerParser} of the key, counts skipped choices
+	 * @return parsed {@link Answer}
+	 * @throws NumberFormatException when the answer is malformed
+	 */
+	private static Answer parseKeyAnswer(String input, int questionId, AnswerParser parser) throws NumberFormatException {
+		Answer answer = parser.parse(input, questionId);
+		if(answer == null) throw new NumberFormatException("Invalid answer \"" + input + "\": " + parser.getErrorMessage());
+		return answer;
+	}
+	
+	/**
+	 * Warns once about all choices with an unknown number of variables skipped by the parser
+	 * @param parser {@link AnswerParser} which is not used anymore
+	 * @param location sheet or file of the parsed answers
+	 */
+	private void reportSkippedChoices(AnswerParser parser, String location) {
+		long skipped = parser.getSkippedChoices();
+		if(skipped == 0) return;
+		metrics.add("warnings.variable-count", skipped);
+		System.out.println("Warning: skipped " + skipped + " choices with an unknown number of variables on " + location);
+	}
+	
+	/**
+	 * Warns about a missing question number and unknown model names of a question sheet
+	 * @param sheet {@link ExcelSheetSnapshot} of the question sheet
+	 * @return true if the sheet starts with a question number
+	 */
+	private boolean checkQuestionSheet(ExcelSheetSnapshot sheet) {
+		if(!sheet.stringAt(QUESTION_NUMBER_COLUMN_INDEX, 0).startsWith(QUESTION_NUMBER_CHAR)) {
+			warn("question-number", "Question on sheet " + sheet.getName() + " does not contain appropriate question number on first row");
+			return false;
+		}
+		for(int i = 0; i < sheet.getRowCount(); i++) {
+			String tmpModel = sheet.stringAt(QUESTION_NUMBER_COLUMN_INDEX + 1, i);
+			if(!sheet.stringAt(QUESTION_NUMBER_COLUMN_INDEX, i).isEmpty() && !tmpModel.isEmpty()) {
+				checkModels(tmpModel, "sheet " + sheet.getName() + ", row " + (i + 1));
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Repeats the warnings of parsing for questions read from the key cache file, so a bad key
+	 * is reported on every run and not only when the sheets are parsed
+	 * @param sheets snapshots of the question sheets the questions were parsed from
+	 * @param questions questions read from the key cache, one for each sheet with a question number
+	 */
+	private void reportKeyWarnings(List<ExcelSheetSnapshot> sheets, List<Question> questions) {
+		Iterator<Question> cached = questions.iterator();
+		for(ExcelSheetSnapshot sheet : sheets) {
+			if(checkQuestionSheet(sheet) && cached.hasNext()) reportIssues(cached.next(), "sheet " + sheet.getName());
+		}
+	}
+	
+	/**
+	 * Warns about model names of a reference answer which are not known and would be evaluated as no model
+	 * @param models models as written in the answer key
+	 * @param location location of the models for the warning
+	 */
+	private void checkModels(String models, String location) {
+		for(String token : Model.unknownTokens(models)) {
+			warn("unknown-model", "Warning: unknown model '" + token + "' on " + location);
+		}
+	}
+	
+	/**
+	 * Warns about problems of the reference answers found when the question was built
+	 * @param question {@link Question} instance
+	 * @param source source of the question for the warning
+	 * @return the given question
+	 */
+	private Question reportIssues(Question question, String source) {
+		for(Question.Issue issue : question.getIssues()) {
+			warn(issue.getKind().name().toLowerCase().replace('_', '-'), "Warning: " + issue.getMessage() + " (" + source + ")");
+		}
+		return question;
+	}
+	
+	/**
+	 * Evaluates all result sheets of the workbook
+	 * @param workbook {@link ExcelWorkbook} instance
+	 * @param questions {@link List} of {@link Question} instances
+	 * @param scoreCache scores from the previous run or null to evaluate all students
+	 * @param resultRows receives index of the result row by sheet name, -1 when missing, may be null
+	 * @return evaluations by result sheet name, in the order of sheets
+	 * @throws InterruptedException when interrupted while waiting for parallel evaluation
+	 */
+	private Map<String, int[]> evaluateResultSheets(ExcelWorkbook workbook, final List<Question> questions, final StudentScoreCache scoreCache, Map<String, Integer> resultRows) throws InterruptedException {
+		Map<String, int[]> evaluations = new LinkedHashMap<String, int[]>();
+		
+		if(sheetExecutor != null) {
+			// Workbook is not thread safe, take snapshots of the sheets before evaluating them concurrently
+			Map<String, Future<int[]>> futures = new LinkedHashMap<String, Future<int[]>>();
+			for(ExcelSheet sheet : workbook.getSheetsByPattern(RESULT_SHEET_NAME_PATTERN)) {
+				final ExcelSheetSnapshot snapshot = sheet.snapshot();
+				if(resultRows != null) resultRows.put(snapshot.getName(), getResultRowNum(snapshot));
+				System.out.println("Sheet " + snapshot.getName() + " evaluation started");
+				futures.put(snapshot.getName(), sheetExecutor.submit(new Callable<int[]>() {
+					@Override
+					public int[] call() throws Exception {
+						return resolveAnswersAndCountEvaluation(snapshot, questions, scoreCache);
+					}
+				}));
+			}
+			for(Map.Entry<String, Future<int[]>> entry : futures.entrySet()) {
+				evaluations.put(entry.getKey(), getResult(entry.getValue()));
+			}
+		} else {
+			for(ExcelSheet sheet : workbook.getSheetsByPattern(RESULT_SHEET_NAME_PATTERN)) {
+				ExcelSheetSnapshot snapshot = sheet.snapshot();
+				if(resultRows != null) resultRows.put(snapshot.getName(), getResultRowNum(snapshot));
+				System.out.println("Sheet " + sheet.getName() + " evaluation started");
+				evaluations.put(sheet.getName(), resolveAnswersAndCountEvaluation(snapshot, questions, scoreCache));
+			}
+		}
+		return evaluations;
+	}
+	
+	/**
+	 * Waits for the result of a parallel task
+	 * @param future {@link Future} of the task
+	 * @return result of the task
+	 * @throws InterruptedException when interrupted while waiting
+	 */
+	private <T> T getResult(Future<T> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+	}
 
 	/**
-	 * Resolves answers from selected {@link ExcelSheet} and evaluate selected {@link Question}s
-	 * @param sheet {@link ExcelSheet} instance
+	 * Resolves answers from selected sheet snapshot and evaluate selected {@link Question}s.
+	 * Students with a valid score in the cache are not evaluated again.
+	 * @param sheet {@link ExcelSheetSnapshot} instance
 	 * @param questions {@link List} of {@link Question} instances
+	 * @param scoreCache scores from the previous run or null to evaluate all students
 	 * @return int array with evaluations
 	 */
-	private int[] resolveAnswersAndCountEvaluation(ExcelSheet sheet, List<Question> questions) {
+	private int[] resolveAnswersAndCountEvaluation(ExcelSheetSnapshot sheet, List<Question> questions, StudentScoreCache scoreCache) {
+		long start = System.nanoTime();
 		int[] evals = null;
-		Evaluation evaluation = null;
-		List<Answer> answers = null;
+		int[] changedEvals = null;
+		List<Answer[]> answers = null;
 		
-		if(sheet.cellAt(RESULT_CORNER_INDEX, 0).asString().equalsIgnoreCase(RESULT_CORNER_STRING)) {
-			ExcelRow firstRow = sheet.getRow(0);
-			evals = new int[firstRow.size() - 1];
-			for(int i = 1; i < firstRow.size(); i++) {
-				evaluation = new Evaluation();
-				answers = getAnswersInColumn(sheet, i);
-				evals[i - 1] = evaluation.evaluate(questions, answers);
+		if(sheet.stringAt(RESULT_CORNER_INDEX, 0).equalsIgnoreCase(RESULT_CORNER_STRING)) {
+			int[] questionIds = resolveQuestionIds(sheet, questions);
+			int maxQuestionId = -1;
+			for(int id : questionIds) {
+				maxQuestionId = Math.max(maxQuestionId, id);
+			}
+			AnswerParser parser = new AnswerParser();
+			int studentCount = sheet.getRow(0).size() - 1;
+			String[] codes = new String[studentCount];
+			long[] hashes = new long[studentCount];
+			List<Integer> changed = new ArrayList<Integer>();
+			evals = new int[studentCount];
+			answers = new ArrayList<Answer[]>(studentCount);
+			for(int i = 0; i < studentCount; i++) {
+				Answer[] studentAnswers = getAnswersInColumn(sheet, questionIds, maxQuestionId, parser, i + 1);
+				Integer cached = null;
+				if(scoreCache != null) {
+					codes[i] = sheet.stringAt(i + 1, 0);
+					hashes[i] = Answer.contentHash(studentAnswers);
+					cached = scoreCache.lookup(sheet.getName(), codes[i], hashes[i]);
+				}
+				if(cached != null) {
+					evals[i] = cached;
+				} else {
+					changed.add(i);
+					answers.add(studentAnswers);
+				}
+			}
+			
+			reportSkippedChoices(parser, "sheet " + sheet.getName());
+			changedEvals = evaluateStudents(questions, answers);
+			for(int i = 0; i < changedEvals.length; i++) {
+				evals[changed.get(i)] = changedEvals[i];
+			}
+			
+			if(scoreCache != null) {
+				for(int i = 0; i < studentCount; i++) {
+					scoreCache.store(sheet.getName(), codes[i], hashes[i], evals[i]);
+				}
 			}
+			recordSheetMetrics(sheet.getName(), evals.length, start);
 		} else {
-			System.out.println("First row of result list does not contain \"" + RESULT_CORNER_STRING + "\" on column num " + RESULT_CORNER_INDEX);
+			warn("missing-corner", "First row of result list does not contain \"" + RESULT_CORNER_STRING + "\" on column num " + RESULT_CORNER_INDEX);
 			return new int[0];
 		}
 		return evals;
 	}
 	
 	/**
-	 * Return answers on selected column index
-	 * @param sheet {@link ExcelSheet} instance
-	 * @param idx column index
-	 * @return {@link List} of {@link Answer}
+	 * Records evaluation time and number of students of one result sheet
+	 * @param sheetName name of the sheet
+	 * @param students number of evaluated students
+	 * @param start start of the evaluation from {@link System#nanoTime()}
+	 */
+	private void recordSheetMetrics(String sheetName, int students, long start) {
+		long nanos = System.nanoTime() - start;
+		metrics.histogram("sheet.evaluate").record(nanos);
+		metrics.add("sheets." + sheetName + ".nanos", nanos);
+		metrics.add("sheets." + sheetName + ".students", students);
+		metrics.add("students", students);
+	}
+	
+	/**
+	 * Evaluates answers of the students, in parallel when enabled
+	 * @param questions {@link List} of {@link Question} instances
+	 * @param answers answers of each student indexed by question number
+	 * @return int array with evaluations
+	 */
+	private int[] evaluateStudents(List<Question> questions, List<Answer[]> answers) {
+		if(parallelEvaluation != null) return parallelEvaluation.evaluate(questions, answers);
+		
+		int[][] answerIds = new int[answers.size()][questions.size()];
+		for(int i = 0; i < answerIds.length; i++) {
+			Answer[] answersById = answers.get(i);
+			for(int q = 0; q < answerIds[i].length; q++) {
+				int id = questions.get(q).getId();
+				if(id >= 0 && id < answersById.length && answersById[id] != null) answerIds[i][q] = questions.get(q).answerIdOf(answersById[id]);
+			}
+		}
+		return Evaluation.evaluateBatch(questions, answerIds);
+	}
+	
+	/**
+	 * Resolves question number of each row of the result sheet, -1 for rows without question number.
+	 * Warns once about questions which have no row on the sheet.
+	 * @param sheet {@link ExcelSheetSnapshot} instance
+	 * @param questions {@link List} of {@link Question} instances
+	 * @return question number of each row
 	 * @throws NumberFormatException when question number have incorrect format
 	 */
-	private List<Answer> getAnswersInColumn(ExcelSheet sheet, int idx) throws NumberFormatException {
-		ExcelColumn column = sheet.getColumnWithEmptyCells(idx);
-		List<Answer> answers = new ArrayList<Answer>(column.size());
+	private int[] resolveQuestionIds(ExcelSheetSnapshot sheet, List<Question> questions) throws NumberFormatException {
 		String tmpCellStr = null;
 		
-		for(int i = 0; i < column.size(); i++) {
-			tmpCellStr = sheet.cellAt(RESULT_CORNER_INDEX, i).asString();
+		int[] questionIds = new int[sheet.getRowCount()];
+		for(int i = 0; i < questionIds.length; i++) {
+			tmpCellStr = sheet.stringAt(RESULT_CORNER_INDEX, i);
 			if(tmpCellStr.startsWith(QUESTION_NUMBER_CHAR)) {
-				answers.add(new Answer(column.get(i).asString(), Integer.valueOf(tmpCellStr.replace(QUESTION_NUMBER_CHAR, ""))));
+				questionIds[i] = Integer.valueOf(tmpCellStr.replace(QUESTION_NUMBER_CHAR, ""));
+			} else {
+				questionIds[i] = -1;
+			}
+		}
+		
+		for(Question question : questions) {
+			boolean found = false;
+			for(int id : questionIds) {
+				if(id == question.getId()) found = true;
+			}
+			if(!found) warn("missing-question", "Warning: sheet " + sheet.getName() + " does not contain answers to question " + question.getId());
+		}
+		return questionIds;
+	}
+	
+	/**
+	 * Return answers on selected column index
+	 * @param sheet {@link ExcelSheetSnapshot} instance
+	 * @param questionIds question number of each row
+	 * @param maxQuestionId largest number in questionIds
+	 * @param parser {@link AnswerParser} reused for all columns of the sheet
+	 * @param idx column index
+	 * @return array of {@link Answer} indexed by question number, null where the question has no row
+	 */
+	private Answer[] getAnswersInColumn(ExcelSheetSnapshot sheet, int[] questionIds, int maxQuestionId, AnswerParser parser, int idx) {
+		Answer[] answers = new Answer[maxQuestionId + 1];
+		int questionId = -1;
+		
+		for(int i = 0; i < questionIds.length; i++) {
+			questionId = questionIds[i];
+			// The first row of a question wins
+			if(questionId >= 0 && answers[questionId] == null) {
+				answers[questionId] = parseStudentAnswer(sheet.stringAt(idx, i), questionId, parser, sheet.getName(), i, idx);
 			} 
 		}
 		return answers;
 	}
 
+	/**
+	 * Parses answer of a student. A malformed answer is reported with its location and ignored,
+	 * so it doesn't stop the evaluation of other students.
+	 * @param input answer string
+	 * @param questionId question number
+	 * @param parser {@link AnswerParser} of the calling thread
+	 * @param sheetName name of the sheet or file with the answer
+	 * @param row zero based row of the answer
+	 * @param column zero based column of the answer
+	 * @return shared {@link Answer} or null when the answer is malformed
+	 */
+	private Answer parseStudentAnswer(String input, int questionId, AnswerParser parser, String sheetName, int row, int column) {
+		Answer answer = studentAnswers.get(input, questionId, parser);
+		if(answer == null) {
+			warn("malformed-answer", "Warning: malformed answer \"" + input + "\" on sheet " + sheetName + ", row " + (row + 1) + ", column " + (column + 1)
+					+ ": " + parser.getErrorMessage() + ", the answer is ignored");
+		}
+		return answer;
+	}
+	
 	/**
 	 * Writes evaluate values to selected sheet
 	 * @param workbook {@link ExcelWorkbook} for font register
@@ -160,23 +691,67 @@ public class EvaluationMain {
 	 * @param evaluation int array with evaluation values
 	 */
 	private void writeEvaluationToSheet(ExcelWorkbook workbook, ExcelSheet sheet, int[] evaluation) {
-		ExcelCell tmpCell = null;
-		ExcelRow tmpRow = null;
-		
 		int resultRowNum = getResultRowNum(sheet);
 		if(resultRowNum != -1) {
-			tmpRow = sheet.createRow(resultRowNum, evaluation.length, 1);
-			for(int i = 0; i < evaluation.length; i++) {
-				tmpCell = tmpRow.get(i + RESULT_CORNER_INDEX);
-				applyCellStyle(workbook, tmpCell, evaluation[i]);
-				tmpCell.setValue(evaluation[i]);
-			}
+			writeEvaluationRow(workbook, sheet, resultRowNum, evaluation);
 		} else {
-			System.out.println("Cannot find result row in result sheet!");
+			warn("missing-result-row", "Cannot find result row in result sheet!");
 			return;
 		}
 	}
 	
+	/**
+	 * Writes evaluate values to the row with selected index
+	 * @param workbook {@link ExcelWorkbook} for font register
+	 * @param sheet {@link ExcelWorkbook} instance
+	 * @param resultRowNum index of the result row
+	 * @param evaluation int array with evaluation values
+	 */
+	private void writeEvaluationRow(ExcelWorkbook workbook, ExcelSheet sheet, int resultRowNum, int[] evaluation) {
+		ExcelCell tmpCell = null;
+		ExcelRow tmpRow = sheet.createRow(resultRowNum, evaluation.length, 1);
+		for(int i = 0; i < evaluation.length; i++) {
+			tmpCell = tmpRow.get(i + RESULT_CORNER_INDEX);
+			applyCellStyle(workbook, tmpCell, evaluation[i]);
+			tmpCell.setValue(evaluation[i]);
+		}
+	}
+	
+	/**
+	 * Copies cell values of all sheets to the output workbook row by row, replacing result rows
+	 * of the evaluated sheets with evaluation values. Rows are streamed from the input and written in
+	 * ascending order, so with a streaming output workbook no sheet is held in memory as a whole.
+	 * @param input {@link ExcelWorkbook} to copy from
+	 * @param output {@link ExcelWorkbook} to copy to
+	 * @param evaluations evaluation values by result sheet name
+	 * @param resultRows index of the result row by result sheet name
+	 */
+	private void copyWorkbookWithEvaluations(ExcelWorkbook input, final ExcelWorkbook output, Map<String, int[]> evaluations, Map<String, Integer> resultRows) {
+		for(ExcelSheet sheet : input.getSheets()) {
+			final ExcelSheet target = output.createSheet(sheet.getName());
+			final int[] evaluation = evaluations.get(sheet.getName());
+			Integer resultRow = resultRows.get(sheet.getName());
+			final int resultRowNum = evaluation == null || resultRow == null ? -1 : resultRow;
+			if(evaluation != null && resultRowNum == -1) warn("missing-result-row", "Cannot find result row in result sheet!");
+			
+			sheet.visitRows(new ExcelSheet.RowVisitor() {
+				@Override
+				public void visit(ExcelRow row) {
+					int y = row.getIndex();
+					if(y == resultRowNum) {
+						writeEvaluationRow(output, target, resultRowNum, evaluation);
+						return;
+					}
+					for(ExcelCell cell : row) {
+						if(cell.isEmpty()) continue;
+						if(cell.isNumeric()) target.createCell(cell.getX(), y).setValue(cell.asNumber());
+						else target.createCell(cell.getX(), y).setValue(cell.asString());
+					}
+				}
+			});
+		}
+	}
+	
 	/**
 	 * Resolves appropriate style for evaluation and apply it to cell
 	 * @param workbook {@link ExcelWorkbook} for font register 
@@ -202,11 +777,320 @@ public class EvaluationMain {
 		return -1;
 	}
 
+	/**
+	 * Resolves index of row with results on the snapshot of a result sheet
+	 * @param resultsSheet {@link ExcelSheetSnapshot} instance
+	 * @return int result row index
+	 */
+	private int getResultRowNum(ExcelSheetSnapshot resultsSheet) {
+		for(int y = 0; y < resultsSheet.getRowCount(); y++) {
+			if(resultsSheet.stringAt(RESULT_CORNER_INDEX, y).equalsIgnoreCase(RESULT_CELL_STRING)) return y;
+		}
+		return -1;
+	}
+	
+	/**
+	 * Writes the output as a copy of the input workbook with the result rows replaced by evaluation values,
+	 * styled like by {@link #writeEvaluationRow(ExcelWorkbook, ExcelSheet, int, int[])}. Other parts
+	 * of the workbook are copied as they are.
+	 * @param inputFile path to the input workbook
+	 * @param outputFile path to the output workbook
+	 * @param evaluations evaluation values by result sheet name
+	 * @param resultRows index of the result row by result sheet name
+	 * @throws IOException when a workbook cannot be read or written
+	 */
+	private void writePatchedWorkbook(String inputFile, String outputFile, Map<String, int[]> evaluations, Map<String, Integer> resultRows) throws IOException {
+		XlsxPatcher patcher = new XlsxPatcher(inputFile);
+		try {
+			int defaultStyle = patcher.addFontStyle(HSSFColor.AUTOMATIC.index);
+			int redStyle = patcher.addFontStyle(HSSFColor.RED.index);
+			for(Map.Entry<String, int[]> entry : evaluations.entrySet()) {
+				Integer resultRowNum = resultRows.get(entry.getKey());
+				if(resultRowNum == null || resultRowNum == -1) {
+					warn("missing-result-row", "Cannot find result row in result sheet!");
+					continue;
+				}
+				int[] evaluation = entry.getValue();
+				double[] values = new double[evaluation.length];
+				int[] styles = new int[evaluation.length];
+				for(int i = 0; i < evaluation.length; i++) {
+					values[i] = evaluation[i];
+					styles[i] = evaluation[i] > 7 ? redStyle : defaultStyle;
+				}
+				patcher.replaceRow(entry.getKey(), resultRowNum, RESULT_CORNER_INDEX + 1, values, styles);
+			}
+			patcher.write(outputFile);
+		} finally {
+			patcher.close();
+		}
+	}
+	
+	/**
+	 * Evaluates a CSV or TSV file with the layout of one result sheet and writes it with the result row
+	 * @param inputFile path to the input file
+	 * @param outputFile path to the output file
+	 * @return number of evaluated students
+	 * @throws IOException when a file cannot be read or written
+	 * @throws InterruptedException when interrupted while waiting for parallel evaluation
+	 * @throws IllegalArgumentException when no answer key is given
+	 */
+	private int evaluateCsv(String inputFile, String outputFile) throws IOException, InterruptedException, IllegalArgumentException {
+		if(options.getKeyFile() == null) throw new IllegalArgumentException("Answer key of " + inputFile + " is required, use --key");
+		
+		long start = System.nanoTime();
+		List<Question> questions = loadAnswerKey(options.getKeyFile());
+		start = metrics.time("phase.questions", start);
+		int[] evaluation = null;
+		System.out.println("Sheet " + new File(inputFile).getName() + " evaluation started");
+		if(options.getStoreFile() != null) {
+			evaluation = evaluateCsvThroughStore(inputFile, new File(options.getStoreFile()), questions);
+		} else {
+			List<Answer[]> answers = new ArrayList<Answer[]>();
+			readCsvAnswers(inputFile, questions, answers);
+			evaluation = evaluateStudents(questions, answers);
+		}
+		recordSheetMetrics(new File(inputFile).getName(), evaluation.length, start);
+		start = metrics.time("phase.evaluate", start);
+		writeCsvWithEvaluation(inputFile, outputFile, evaluation);
+		metrics.time("phase.write", start);
+		metrics.add("workbooks", 1);
+		return evaluation.length;
+	}
+	
+	/**
+	 * Encodes answers of a CSV or TSV file to the answer store, evaluates the store and returns the scores.
+	 * Answers are encoded row by row, no answers are kept on the heap.
+	 * @param inputFile path to the input file
+	 * @param storeFile path to the answer store, it is overwritten
+	 * @param questions {@link List} of {@link Question} instances
+	 * @return int array with evaluations
+	 * @throws IOException when a file cannot be read or written
+	 * @throws NumberFormatException when question number have incorrect format
+	 */
+	private int[] evaluateCsvThroughStore(String inputFile, File storeFile, List<Question> questions) throws IOException, NumberFormatException {
+		String keyHash = AnswerKeyCodec.hashOf(questions);
+		int[] questionIds = new int[questions.size()];
+		for(int i = 0; i < questionIds.length; i++) {
+			questionIds[i] = questions.get(i).getId();
+		}
+		boolean[] found = new boolean[questionIds.length];
+		AnswerStore store = null;
+		AnswerParser parser = new AnswerParser();
+		String sheetName = new File(inputFile).getName();
+		
+		CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(inputFile), "UTF-8"), CsvReader.delimiterFor(inputFile));
+		try {
+			if(!reader.next() || !reader.get(RESULT_CORNER_INDEX).equalsIgnoreCase(RESULT_CORNER_STRING)) {
+				warn("missing-corner", "First row of result list does not contain \"" + RESULT_CORNER_STRING + "\" on column num " + RESULT_CORNER_INDEX);
+				return new int[0];
+			}
+			int studentCount = Math.max(reader.getTrimmedFieldCount() - 1, 0);
+			store = AnswerStore.create(storeFile, keyHash, questionIds, studentCount);
+			
+			while(reader.next()) {
+				String tmpCellStr = reader.get(RESULT_CORNER_INDEX);
+				if(!tmpCellStr.startsWith(QUESTION_NUMBER_CHAR)) continue;
+				int questionId = Integer.valueOf(tmpCellStr.replace(QUESTION_NUMBER_CHAR, ""));
+				// The first row of a question wins
+				int column = store.columnOf(questionId);
+				if(column < 0 || found[column]) continue;
+				found[column] = true;
+				Question question = questions.get(column);
+				for(int i = 0; i < studentCount; i++) {
+					Answer answer = parseStudentAnswer(reader.get(i + 1), questionId, parser, sheetName, reader.getRecordIndex(), i + 1);
+					store.setAnswerId(i, column, answer == null ? 0 : question.answerIdOf(answer));
+				}
+			}
+			
+			for(int i = 0; i < found.length; i++) {
+				if(!found[i]) warn("missing-question", "Warning: sheet " + new File(inputFile).getName() + " does not contain answers to question " + questionIds[i]);
+			}
+			reportSkippedChoices(parser, sheetName);
+			
+			StoreEvaluation.evaluate(store, questions, keyHash);
+			int[] evaluation = new int[studentCount];
+			for(int i = 0; i < studentCount; i++) {
+				evaluation[i] = store.getScore(i);
+			}
+			return evaluation;
+		} finally {
+			reader.close();
+			if(store != null) store.close();
+		}
+	}
+	
+	/**
+	 * Loads the answer key of CSV input, either from a CSV or TSV file or from question sheets of a workbook
+	 * @param keyFile path to the answer key
+	 * @return {@link List} of {@link Question} instances
+	 * @throws IOException when the key cannot be read
+	 * @throws InterruptedException when interrupted while waiting for parallel parsing
+	 */
+	List<Question> loadAnswerKey(String keyFile) throws IOException, InterruptedException {
+		if(CsvReader.isDelimitedFile(keyFile)) return readCsvAnswerKey(keyFile);
+		
+		ExcelWorkbook workbook = ExcelWorkbook.openReadOnly(keyFile, QUESTION_SHEET_NAME_PATTERN);
+		try {
+			List<ExcelSheetSnapshot> questionSheets = snapshotQuestionSheets(workbook);
+			String keyHash = AnswerKeyCache.hashOf(questionSheets, QUESTION_NUMBER_COLUMN_INDEX + 2);
+			return loadQuestions(questionSheets, keyHash, options.isKeyCache() ? new File(keyFile + ".keycache") : null);
+		} finally {
+			workbook.close();
+		}
+	}
+	
+	/**
+	 * Reads answer key from a CSV or TSV file. Each question starts with a row with the question number
+	 * followed by rows with an answer and its models, as on the question sheets.
+	 * @param keyFile path to the answer key
+	 * @return {@link List} of {@link Question} instances
+	 * @throws IOException when the key cannot be read
+	 * @throws NumberFormatException when question number have incorrect format
+	 */
+	private List<Question> readCsvAnswerKey(String keyFile) throws IOException, NumberFormatException {
+		List<Question> questions = new ArrayList<Question>();
+		List<ModelsAndAnswer> answers = null;
+		int questionId = -1;
+		AnswerParser parser = new AnswerParser();
+		
+		CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(keyFile), "UTF-8"), CsvReader.delimiterFor(keyFile));
+		try {
+			while(reader.next()) {
+				String tmpAnswer = reader.get(QUESTION_NUMBER_COLUMN_INDEX);
+				String tmpModel = reader.get(QUESTION_NUMBER_COLUMN_INDEX + 1);
+				if(tmpAnswer.startsWith(QUESTION_NUMBER_CHAR)) {
+					if(answers != null) questions.add(reportIssues(new Question(questionId, answers), keyFile));
+					questionId = Integer.valueOf(tmpAnswer.replace(QUESTION_NUMBER_CHAR, ""));
+					answers = new ArrayList<ModelsAndAnswer>();
+				} else if(answers != null && !tmpAnswer.isEmpty() && !tmpModel.isEmpty()) {
+					checkModels(tmpModel, keyFile + ", record " + (reader.getRecordIndex() + 1));
+					answers.add(new ModelsAndAnswer(parseKeyAnswer(tmpAnswer, questionId, parser), Model.parseModels(tmpModel)));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		if(answers != null) questions.add(reportIssues(new Question(questionId, answers), keyFile));
+		reportSkippedChoices(parser, keyFile);
+		return questions;
+	}
+	
+	/**
+	 * Reads answers of all students from a CSV or TSV file with the layout of a result sheet.
+	 * The file is read record by record, answers are parsed as soon as their row is read.
+	 * @param inputFile path to the input file
+	 * @param questions {@link List} of {@link Question} instances
+	 * @param answers receives answers of each student indexed by question number
+	 * @throws IOException when the file cannot be read
+	 * @throws NumberFormatException when question number have incorrect format
+	 */
+	private void readCsvAnswers(String inputFile, List<Question> questions, List<Answer[]> answers) throws IOException, NumberFormatException {
+		int maxQuestionId = -1;
+		for(Question question : questions) {
+			maxQuestionId = Math.max(maxQuestionId, question.getId());
+		}
+		boolean[] found = new boolean[maxQuestionId + 1];
+		String tmpCellStr = null;
+		AnswerParser parser = new AnswerParser();
+		String sheetName = new File(inputFile).getName();
+		
+		CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(inputFile), "UTF-8"), CsvReader.delimiterFor(inputFile));
+		try {
+			if(!reader.next() || !reader.get(RESULT_CORNER_INDEX).equalsIgnoreCase(RESULT_CORNER_STRING)) {
+				warn("missing-corner", "First row of result list does not contain \"" + RESULT_CORNER_STRING + "\" on column num " + RESULT_CORNER_INDEX);
+				return;
+			}
+			int studentCount = Math.max(reader.getTrimmedFieldCount() - 1, 0);
+			for(int i = 0; i < studentCount; i++) {
+				answers.add(new Answer[maxQuestionId + 1]);
+			}
+			
+			while(reader.next()) {
+				tmpCellStr = reader.get(RESULT_CORNER_INDEX);
+				if(!tmpCellStr.startsWith(QUESTION_NUMBER_CHAR)) continue;
+				int questionId = Integer.valueOf(tmpCellStr.replace(QUESTION_NUMBER_CHAR, ""));
+				// Questions not in the key are never evaluated, the first row of a question wins
+				if(questionId < 0 || questionId > maxQuestionId || found[questionId]) continue;
+				found[questionId] = true;
+				for(int i = 0; i < studentCount; i++) {
+					answers.get(i)[questionId] = parseStudentAnswer(reader.get(i + 1), questionId, parser, sheetName, reader.getRecordIndex(), i + 1);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		
+		for(Question question : questions) {
+			if(question.getId() < 0 || !found[question.getId()]) warn("missing-question", "Warning: sheet " + new File(inputFile).getName() + " does not contain answers to question " + question.getId());
+		}
+		reportSkippedChoices(parser, sheetName);
+	}
+	
+	/**
+	 * Copies the input CSV or TSV file to the output, replacing the result row with evaluation values.
+	 * The result row is appended when the input has none.
+	 * @param inputFile path to the input file
+	 * @param outputFile path to the output file
+	 * @param evaluation int array with evaluation values
+	 * @throws IOException when a file cannot be read or written
+	 */
+	private void writeCsvWithEvaluation(String inputFile, String outputFile, int[] evaluation) throws IOException {
+		boolean written = false;
+		
+		CsvReader reader = new CsvReader(new InputStreamReader(new FileInputStream(inputFile), "UTF-8"), CsvReader.delimiterFor(inputFile));
+		CsvWriter writer = new CsvWriter(new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputFile), "UTF-8")), CsvReader.delimiterFor(outputFile));
+		try {
+			while(reader.next()) {
+				if(!written && reader.getRecordIndex() > 0 && reader.get(RESULT_CORNER_INDEX).equalsIgnoreCase(RESULT_CELL_STRING)) {
+					writeCsvEvaluationRecord(writer, evaluation);
+					written = true;
+				} else {
+					writer.copyRecord(reader);
+				}
+			}
+			if(!written) writeCsvEvaluationRecord(writer, evaluation);
+		} finally {
+			reader.close();
+			writer.close();
+		}
+	}
+	
+	/**
+	 * Writes the result row with evaluation values
+	 * @param writer {@link CsvWriter} instance
+	 * @param evaluation int array with evaluation values
+	 * @throws IOException when the file cannot be written
+	 */
+	private void writeCsvEvaluationRecord(CsvWriter writer, int[] evaluation) throws IOException {
+		writer.write(RESULT_CELL_STRING);
+		for(int value : evaluation) {
+			writer.write(Integer.toString(value));
+		}
+		writer.endRecord();
+	}
+	
 	/**
 	 * @param args String
 	 */
 	public static void main(String[] args) {
-		new EvaluationMain();
+		EvaluationOptions options = null;
+		try {
+			options = EvaluationOptions.fromArgs(args);
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println(EvaluationOptions.usage());
+			return;
+		}
+		EvaluationMain evaluation = new EvaluationMain(options);
+		try {
+			evaluation.evaluate(options.getInputFile(), options.getOutputFile());
+			if(options.getMetricsFile() != null) evaluation.getMetrics().writeJson(options.getMetricsFile());
+			System.out.println("Done!");
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			evaluation.shutdown();
+		}
 	}
 
 }
@@ -0,0 +1,319 @@
+package app;
+
+/**
+ * Options of one evaluation run, usually parsed from the command line
+ * @author Pavel Janecka, Karel Petranek
+ */
+public class EvaluationOptions {
+
+	private String inputFile = "data/data_c01.xlsx";
+	private String outputFile = "data/data_c01_.xlsx";
+	private boolean streamingRead = false;
+	private boolean streamingWrite = false;
+	private int writeWindowSize = 100;
+	private boolean patchWrite = false;
+	private int parallelism = 1;
+	private boolean parallelSheets = false;
+	private boolean incremental = false;
+	private boolean keyCache = false;
+	private String keyFile = null;
+	private String storeFile = null;
+	private String metricsFile = null;
+	
+	/**
+	 * @return path to the input workbook
+	 */
+	public String getInputFile() {
+		return inputFile;
+	}
+
+	/**
+	 * @param inputFile path to the input workbook
+	 */
+	public void setInputFile(String inputFile) {
+		this.inputFile = inputFile;
+	}
+
+	/**
+	 * @return path to the output workbook
+	 */
+	public String getOutputFile() {
+		return outputFile;
+	}
+
+	/**
+	 * @param outputFile path to the output workbook
+	 */
+	public void setOutputFile(String outputFile) {
+		this.outputFile = outputFile;
+	}
+
+	/**
+	 * Returns true if the input workbook is read in the streaming read-only mode
+	 * @return True for streaming read
+	 * @see excel.ExcelWorkbook#openReadOnly(String)
+	 */
+	public boolean isStreamingRead() {
+		return streamingRead;
+	}
+
+	/**
+	 * Enables reading of the questions and answers in the streaming read-only mode. Only the question
+	 * and result sheets are read, other sheets are never inflated. The workbook is then
+	 * loaded in full only for writing the results.
+	 * @param streamingRead True to enable streaming read
+	 */
+	public void setStreamingRead(boolean streamingRead) {
+		this.streamingRead = streamingRead;
+	}
+
+	/**
+	 * Returns true if the output workbook is written in the streaming mode
+	 * @return True for streaming write
+	 * @see excel.ExcelWorkbook#createStreaming(int)
+	 */
+	public boolean isStreamingWrite() {
+		return streamingWrite;
+	}
+
+	/**
+	 * Enables writing of the output through a streaming workbook with a fixed number of rows in memory.
+	 * Only cell values of the input are copied to the output, formatting is not preserved.
+	 * @param streamingWrite True to enable streaming write
+	 */
+	public void setStreamingWrite(boolean streamingWrite) {
+		this.streamingWrite = streamingWrite;
+	}
+
+	/**
+	 * Returns true if the output is written by patching the result rows of the input workbook
+	 * @return True for patch write
+	 * @see excel.XlsxPatcher
+	 */
+	public boolean isPatchWrite() {
+		return patchWrite;
+	}
+
+	/**
+	 * Enables writing of the output as a copy of the input workbook with only the result rows replaced.
+	 * Unchanged parts of the workbook are copied without being parsed or compressed again.
+	 * It takes precedence over the streaming write.
+	 * @param patchWrite True to enable patch write
+	 */
+	public void setPatchWrite(boolean patchWrite) {
+		this.patchWrite = patchWrite;
+	}
+
+	/**
+	 * @return number of rows per sheet kept in memory by the streaming write
+	 */
+	public int getWriteWindowSize() {
+		return writeWindowSize;
+	}
+
+	/**
+	 * Sets number of rows per sheet kept in memory by the streaming write
+	 * @param writeWindowSize number of rows, must be positive
+	 */
+	public void setWriteWindowSize(int writeWindowSize) {
+		if(writeWindowSize < 1) throw new IllegalArgumentException("Write window size must be positive");
+		this.writeWindowSize = writeWindowSize;
+	}
+
+	/**
+	 * @return number of threads evaluating students, 1 means sequential evaluation
+	 */
+	public int getParallelism() {
+		return parallelism;
+	}
+
+	/**
+	 * Sets number of threads evaluating students of a result sheet concurrently
+	 * @param parallelism number of threads, 1 for sequential evaluation
+	 */
+	public void setParallelism(int parallelism) {
+		if(parallelism < 1) throw new IllegalArgumentException("Parallelism must be positive");
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * @return true if question and result sheets are processed concurrently
+	 */
+	public boolean isParallelSheets() {
+		return parallelSheets;
+	}
+
+	/**
+	 * Enables concurrent parsing of question sheets and evaluation of result sheets. The number
+	 * of sheets processed at once is given by {@link #getParallelism()}.
+	 * @param parallelSheets true to process sheets concurrently
+	 */
+	public void setParallelSheets(boolean parallelSheets) {
+		this.parallelSheets = parallelSheets;
+	}
+
+	/**
+	 * Returns true if scores of students whose answers didn't change since the last run are reused
+	 * @return True for incremental evaluation
+	 * @see StudentScoreCache
+	 */
+	public boolean isIncremental() {
+		return incremental;
+	}
+
+	/**
+	 * Enables incremental evaluation. Scores are kept in a file next to the input workbook and
+	 * only students with changed answers are evaluated again. All students are evaluated when
+	 * the answer key changes.
+	 * @param incremental True to enable incremental evaluation
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Returns true if the parsed answer key is stored in a binary file next to the input workbook
+	 * @return True when the key cache file is used
+	 * @see model.AnswerKeyCodec
+	 */
+	public boolean isKeyCache() {
+		return keyCache;
+	}
+
+	/**
+	 * Enables storing of the parsed answer key next to the input workbook (as input.keycache).
+	 * Question sheets are then parsed again only when their contents change. Disabled by default,
+	 * so the directory of the input is not modified.
+	 * @param keyCache True to use the key cache file
+	 */
+	public void setKeyCache(boolean keyCache) {
+		this.keyCache = keyCache;
+	}
+
+	/**
+	 * @return path to the answer key of CSV input or null
+	 */
+	public String getKeyFile() {
+		return keyFile;
+	}
+
+	/**
+	 * Sets the answer key used for CSV and TSV input, which has no question sheets. The key is either
+	 * a CSV or TSV file with blocks of "#n" row followed by answer and model rows, or a workbook with question sheets.
+	 * @param keyFile path to the answer key
+	 */
+	public void setKeyFile(String keyFile) {
+		this.keyFile = keyFile;
+	}
+
+	/**
+	 * @return path to the answer store of CSV input or null to keep the answers on the heap
+	 */
+	public String getStoreFile() {
+		return storeFile;
+	}
+
+	/**
+	 * Sets the file of the memory mapped answer store. Answers of CSV and TSV input are then encoded
+	 * to the store and evaluated from it, so the cohort doesn't have to fit to the heap.
+	 * @param storeFile path to the answer store, it is overwritten
+	 * @see store.AnswerStore
+	 */
+	public void setStoreFile(String storeFile) {
+		this.storeFile = storeFile;
+	}
+
+	/**
+	 * @return path to the JSON report with metrics of the run or null
+	 */
+	public String getMetricsFile() {
+		return metricsFile;
+	}
+
+	/**
+	 * Sets the file the metrics of the run (phase times, throughput, cache hit rates, warnings) are written to
+	 * at the end of the run
+	 * @param metricsFile path to the JSON report or null for no report
+	 * @see metrics.Metrics#toJson()
+	 */
+	public void setMetricsFile(String metricsFile) {
+		this.metricsFile = metricsFile;
+	}
+
+	/**
+	 * Parses options from the command line arguments
+	 * @param args command line arguments
+	 * @return parsed {@link EvaluationOptions}
+	 * @throws IllegalArgumentException when an argument is not recognized
+	 */
+	public static EvaluationOptions fromArgs(String[] args) throws IllegalArgumentException {
+		EvaluationOptions options = new EvaluationOptions();
+		for(int i = 0; i < args.length; i++) {
+			if(args[i].equals("--input") && i + 1 < args.length) {
+				options.setInputFile(args[++i]);
+			} else if(args[i].equals("--output") && i + 1 < args.length) {
+				options.setOutputFile(args[++i]);
+			} else if(args[i].equals("--streaming-read")) {
+				options.setStreamingRead(true);
+			} else if(args[i].equals("--streaming-write")) {
+				options.setStreamingWrite(true);
+			} else if(args[i].equals("--patch-write")) {
+				options.setPatchWrite(true);
+			} else if(args[i].equals("--write-window") && i + 1 < args.length) {
+				options.setWriteWindowSize(parseInt(args[i], args[++i]));
+			} else if(args[i].equals("--parallelism") && i + 1 < args.length) {
+				options.setParallelism(parseInt(args[i], args[++i]));
+			} else if(args[i].equals("--parallel-sheets")) {
+				options.setParallelSheets(true);
+			} else if(args[i].equals("--incremental")) {
+				options.setIncremental(true);
+			} else if(args[i].equals("--key") && i + 1 < args.length) {
+				options.setKeyFile(args[++i]);
+			} else if(args[i].equals("--store") && i + 1 < args.length) {
+				options.setStoreFile(args[++i]);
+			} else if(args[i].equals("--metrics") && i + 1 < args.length) {
+				options.setMetricsFile(args[++i]);
+			} else if(args[i].equals("--key-cache")) {
+				options.setKeyCache(true);
+			} else {
+				throw new IllegalArgumentException("Unknown argument " + args[i]);
+			}
+		}
+		return options;
+	}
+	
+	/**
+	 * Parses integer value of an option
+	 * @param name option name
+	 * @param value option value
+	 * @return parsed value
+	 * @throws IllegalArgumentException when the value is not a number
+	 */
+	private static int parseInt(String name, String value) throws IllegalArgumentException {
+		try {
+			return Integer.parseInt(value);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Option " + name + " requires a number, got " + value);
+		}
+	}
+	
+	/**
+	 * @return usage description of the command line arguments
+	 */
+	public static String usage() {
+		return "Options:\n"
+			+ "  --input FILE        input workbook or .csv/.tsv file with one result sheet (default data/data_c01.xlsx)\n"
+			+ "  --output FILE       output workbook or .csv/.tsv file (default data/data_c01_.xlsx)\n"
+			+ "  --key FILE          answer key of .csv/.tsv input, a .csv/.tsv file or a workbook with question sheets\n"
+			+ "  --store FILE        encode answers of .csv/.tsv input to a memory mapped file instead of the heap\n"
+			+ "  --streaming-read    read only question and result sheets without loading the whole workbook\n"
+			+ "  --streaming-write   write the output with a fixed number of rows in memory (values only)\n"
+			+ "  --write-window N    rows per sheet kept in memory by --streaming-write (default 100)\n"
+			+ "  --patch-write       copy the input workbook and replace only its result rows, other parts are not rewritten\n"
+			+ "  --parallelism N     number of threads evaluating students (default 1)\n"
+			+ "  --parallel-sheets   process question and result sheets concurrently\n"
+			+ "  --incremental       evaluate again only students whose answers changed since the last run\n"
+			+ "  --key-cache         store the parsed answer key next to the input workbook and reuse it on the next run\n"
+			+ "  --metrics FILE      write timing, throughput, cache statistics and warning counts of the run as JSON\n";
+	}
+}
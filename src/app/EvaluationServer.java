@@ -0,0 +1,693 @@
+package app;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import model.Answer;
+import model.AnswerParser;
+import model.Evaluation;
+import model.Question;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import metrics.Metrics;
+import csv.CsvReader;
+
+/**
+ * Long-running evaluation of single students over HTTP. Answer keys are loaded once at startup and kept
+ * in memory, so a request only parses the answers of the student and evaluates them.
+ * <p>
+ * Endpoints:
+ * <ul>
+ * <li>GET /keys - loaded keys with the question numbers in the order expected by CSV requests</li>
+ * <li>POST /evaluate?key=NAME - evaluates one student</li>
+ * <li>POST /evaluate/batch?key=NAME - evaluates more students</li>
+ * <li>GET /metrics - request timings and warning counts as JSON</li>
+ * </ul>
+ * The key parameter may be left out when only one key is loaded. A student is either a JSON object
+ * <code>{"id": "S01", "answers": {"1": "20,0", "2": "10,10"}}</code> with answers by question number, or a CSV
+ * line <code>S01,"20,0","10,10"</code> with the student code followed by answers in the order of the key.
+ * A batch is a JSON array of such objects or CSV with one student per line. The response is
+ * <code>{"id": "S01", "score": 9, "consistent": true, "malformed": []}</code>, an array of them for a batch.
+ * @author Pavel Janecka, Karel Petranek
+ */
+public class EvaluationServer {
+
+	private static final int DEFAULT_PORT = 8080;
+	private static final int DEFAULT_MAX_BODY_BYTES = 16 * 1024 * 1024;
+	private static final String JSON_TYPE = "application/json; charset=UTF-8";
+
+	/**
+	 * Answer key kept in memory
+	 */
+	private static class Key {
+		String name;
+		List<Question> questions;
+		int maxQuestionId = -1;
+
+		Key(String name, List<Question> questions) {
+			this.name = name;
+			this.questions = questions;
+			for(Question question : questions) {
+				maxQuestionId = Math.max(maxQuestionId, question.getId());
+			}
+		}
+	}
+
+	/**
+	 * Request which cannot be served, the message is returned to the client
+	 */
+	private static class RequestException extends Exception {
+		private static final long serialVersionUID = 1L;
+		final int status;
+
+		RequestException(int status, String message) {
+			super(message);
+			this.status = status;
+		}
+	}
+
+	private final EvaluationMain evaluation;
+	private final Metrics metrics;
+	private final Map<String, Key> keys = new LinkedHashMap<String, Key>();
+	private HttpServer server = null;
+	private ExecutorService executor = null;
+	private int maxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+
+	/**
+	 * Creates the server, keys are added by {@link #loadKey(String, String)}
+	 * @param options options of loading of the keys
+	 */
+	public EvaluationServer(EvaluationOptions options) {
+		evaluation = new EvaluationMain(options);
+		metrics = evaluation.getMetrics();
+	}
+
+	/**
+	 * Sets the largest accepted request body, larger requests are rejected with status 413
+	 * @param maxBodyBytes size limit in bytes
+	 */
+	public void setMaxBodyBytes(int maxBodyBytes) {
+		this.maxBodyBytes = maxBodyBytes;
+	}
+
+	/**
+	 * Loads an answer key and keeps it in memory
+	 * @param name name of the key in requests
+	 * @param keyFile a .csv/.tsv file or a workbook with question sheets
+	 * @throws IOException when the key cannot be read
+	 * @throws InterruptedException when interrupted while waiting for parallel parsing
+	 */
+	public void loadKey(String name, String keyFile) throws IOException, InterruptedException {
+		Key key = new Key(name, evaluation.loadAnswerKey(keyFile));
+		synchronized(keys) {
+			keys.put(name, key);
+		}
+		System.out.println("Key " + name + " loaded from " + keyFile + ", " + key.questions.size() + " questions");
+	}
+
+	/**
+	 * Starts serving requests. Requests are handled on virtual threads when the runtime has them,
+	 * otherwise on a cached pool of threads.
+	 * @param port port to listen on
+	 * @throws IOException when the port cannot be bound
+	 */
+	public void start(int port) throws IOException {
+		server = HttpServer.create(new InetSocketAddress(port), 0);
+		server.createContext("/keys", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange, "GET", false, false);
+			}
+		});
+		server.createContext("/evaluate", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange, "POST", true, exchange.getRequestURI().getPath().equals("/evaluate/batch"));
+			}
+		});
+		server.createContext("/metrics", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange, "GET", false, false);
+			}
+		});
+		executor = newRequestExecutor();
+		server.setExecutor(executor);
+		server.start();
+		System.out.println("Listening on port " + server.getAddress().getPort());
+	}
+
+	/**
+	 * Stops serving requests
+	 */
+	public void stop() {
+		if(server != null) server.stop(0);
+		if(executor != null) executor.shutdown();
+		evaluation.shutdown();
+	}
+
+	/**
+	 * Creates executor with a virtual thread per task, available since Java 21. It is looked up by reflection,
+	 * the sources are built also for older runtimes.
+	 * @return the executor
+	 */
+	private static ExecutorService newRequestExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			return Executors.newCachedThreadPool();
+		}
+	}
+
+	/**
+	 * Serves one request and writes the JSON response
+	 * @param exchange the request
+	 * @param method expected HTTP method
+	 * @param evaluate true to evaluate the request body
+	 * @param batch true when the body contains more students
+	 * @throws IOException when the response cannot be written
+	 */
+	private void serve(HttpExchange exchange, String method, boolean evaluate, boolean batch) throws IOException {
+		long start = System.nanoTime();
+		String path = exchange.getRequestURI().getPath();
+		int status = 200;
+		String response = null;
+
+		try {
+			if(!exchange.getRequestMethod().equalsIgnoreCase(method)) throw new RequestException(405, "Use " + method + " for " + path);
+			if(evaluate) {
+				Key key = keyFor(exchange);
+				String body = readBody(exchange);
+				String type = exchange.getRequestHeaders().getFirst("Content-Type");
+				AnswerParser parser = new AnswerParser();
+				long evaluationStart = System.nanoTime();
+				try {
+					response = batch ? evaluateBatch(key, body, type, parser) : evaluateSingle(key, body, type, parser);
+				} finally {
+					evaluation.recordRun(evaluationStart, System.nanoTime());
+					if(parser.getSkippedChoices() > 0) metrics.add("warnings.variable-count", parser.getSkippedChoices());
+				}
+			} else if(path.equals("/keys")) {
+				response = keysToJson();
+			} else if(path.equals("/metrics")) {
+				response = evaluation.getMetrics().toJson();
+			} else {
+				throw new RequestException(404, "Unknown path " + path);
+			}
+		} catch (RequestException e) {
+			status = e.status;
+			response = "{\"error\": " + quote(e.getMessage()) + "}";
+			metrics.add("requests.errors", 1);
+		}
+
+		byte[] bytes = response.getBytes("UTF-8");
+		exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+		exchange.sendResponseHeaders(status, bytes.length);
+		OutputStream out = exchange.getResponseBody();
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+		metrics.histogram("request" + (batch ? ".batch" : evaluate ? ".single" : ".other")).record(System.nanoTime() - start);
+	}
+
+	/**
+	 * Returns key named by the key parameter of the request, or the only key when there is no parameter
+	 * @param exchange the request
+	 * @return the key
+	 * @throws RequestException when the key is not loaded
+	 */
+	private Key keyFor(HttpExchange exchange) throws RequestException {
+		String name = queryParameter(exchange.getRequestURI().getRawQuery(), "key");
+		synchronized(keys) {
+			if(name == null) {
+				if(keys.size() == 1) return keys.values().iterator().next();
+				throw new RequestException(400, "Parameter key is required, loaded keys: " + keys.keySet());
+			}
+			Key key = keys.get(name);
+			if(key == null) throw new RequestException(404, "Unknown key " + name);
+			return key;
+		}
+	}
+
+	/**
+	 * Evaluates one student
+	 * @param key the answer key
+	 * @param body JSON object or CSV line
+	 * @param type content type of the body, may be null
+	 * @param parser parser of the answers
+	 * @return JSON result
+	 * @throws RequestException when the body cannot be parsed
+	 */
+	private String evaluateSingle(Key key, String body, String type, AnswerParser parser) throws RequestException {
+		if(isJson(body, type)) {
+			Object student = new JsonParser(body).parse();
+			if(!(student instanceof Map)) throw new RequestException(400, "Expected JSON object of the student");
+			return evaluateJsonStudent(key, (Map<?, ?>) student, parser);
+		}
+		List<String> results = evaluateCsvStudents(key, body, type, parser);
+		if(results.size() != 1) throw new RequestException(400, "Expected one CSV line, got " + results.size());
+		return results.get(0);
+	}
+
+	/**
+	 * Evaluates more students
+	 * @param key the answer key
+	 * @param body JSON array or CSV lines
+	 * @param type content type of the body, may be null
+	 * @param parser parser of the answers
+	 * @return JSON array of results
+	 * @throws RequestException when the body cannot be parsed
+	 */
+	private String evaluateBatch(Key key, String body, String type, AnswerParser parser) throws RequestException {
+		List<String> results = new ArrayList<String>();
+		if(isJson(body, type)) {
+			Object students = new JsonParser(body).parse();
+			if(!(students instanceof List)) throw new RequestException(400, "Expected JSON array of students");
+			for(Object student : (List<?>) students) {
+				if(!(student instanceof Map)) throw new RequestException(400, "Expected JSON object of the student");
+				results.add(evaluateJsonStudent(key, (Map<?, ?>) student, parser));
+			}
+		} else {
+			results = evaluateCsvStudents(key, body, type, parser);
+		}
+
+		StringBuilder json = new StringBuilder(results.size() * 64 + 2);
+		json.append('[');
+		for(int i = 0; i < results.size(); i++) {
+			if(i > 0) json.append(",\n");
+			json.append(results.get(i));
+		}
+		return json.append(']').toString();
+	}
+
+	/**
+	 * Evaluates a student given by a JSON object
+	 * @param key the answer key
+	 * @param student parsed JSON object
+	 * @param parser parser of the answers
+	 * @return JSON result
+	 * @throws RequestException when the object has no answers
+	 */
+	private String evaluateJsonStudent(Key key, Map<?, ?> student, AnswerParser parser) throws RequestException {
+		Object answers = student.get("answers");
+		if(!(answers instanceof Map)) throw new RequestException(400, "Expected object answers with answers by question number");
+
+		Answer[] answersById = new Answer[key.maxQuestionId + 1];
+		List<Integer> malformed = new ArrayList<Integer>();
+		for(Map.Entry<?, ?> entry : ((Map<?, ?>) answers).entrySet()) {
+			int questionId;
+			try {
+				questionId = Integer.parseInt(entry.getKey().toString().replace("#", ""));
+			} catch (NumberFormatException e) {
+				throw new RequestException(400, "Invalid question number " + entry.getKey());
+			}
+			if(questionId < 0 || questionId > key.maxQuestionId || entry.getValue() == null) continue;
+			answersById[questionId] = parseAnswer(entry.getValue().toString(), questionId, parser, malformed);
+		}
+		Object id = student.get("id");
+		return result(id == null ? null : id.toString(), key, answersById, malformed);
+	}
+
+	/**
+	 * Evaluates students given by CSV lines with the student code followed by answers in the order of the key
+	 * @param key the answer key
+	 * @param body CSV lines
+	 * @param type content type of the body, tab separated values when it contains "tab-separated"
+	 * @param parser parser of the answers
+	 * @return JSON result of each line
+	 * @throws RequestException when the body cannot be parsed
+	 */
+	private List<String> evaluateCsvStudents(Key key, String body, String type, AnswerParser parser) throws RequestException {
+		List<String> results = new ArrayList<String>();
+		char delimiter = type != null && type.contains("tab-separated") ? '\t' : ',';
+		CsvReader reader = new CsvReader(new StringReader(body), delimiter);
+		try {
+			while(reader.next()) {
+				if(reader.getTrimmedFieldCount() == 0) continue;
+				Answer[] answersById = new Answer[key.maxQuestionId + 1];
+				List<Integer> malformed = new ArrayList<Integer>();
+				for(int i = 0; i < key.questions.size(); i++) {
+					int questionId = key.questions.get(i).getId();
+					if(questionId >= 0) answersById[questionId] = parseAnswer(reader.get(i + 1), questionId, parser, malformed);
+				}
+				results.add(result(reader.get(0), key, answersById, malformed));
+			}
+			reader.close();
+		} catch (IOException e) {
+			throw new RequestException(400, "Invalid CSV: " + e.getMessage());
+		}
+		return results;
+	}
+
+	/**
+	 * Parses answer of the student through the shared answer cache
+	 * @param input answer as written by the student
+	 * @param questionId question number
+	 * @param parser parser of the answers
+	 * @param malformed receives question number of a malformed answer
+	 * @return parsed answer or null when it is empty or malformed
+	 */
+	private Answer parseAnswer(String input, int questionId, AnswerParser parser, List<Integer> malformed) {
+		if(input.trim().isEmpty()) return null;
+		Answer answer = evaluation.getAnswerCache().get(input, questionId, parser);
+		if(answer == null) {
+			malformed.add(questionId);
+			metrics.add("warnings.malformed-answer", 1);
+		}
+		return answer;
+	}
+
+	/**
+	 * Evaluates answers of a student and formats the result
+	 * @param id student code, may be null
+	 * @param key the answer key
+	 * @param answersById answers indexed by question number
+	 * @param malformed question numbers of malformed answers
+	 * @return JSON result
+	 */
+	private String result(String id, Key key, Answer[] answersById, List<Integer> malformed) {
+		int score = new Evaluation().evaluate(key.questions, answersById);
+		metrics.add("students", 1);
+
+		StringBuilder json = new StringBuilder(64);
+		json.append('{');
+		if(id != null) json.append("\"id\": ").append(quote(id)).append(", ");
+		json.append("\"score\": ").append(score);
+		json.append(", \"consistent\": ").append(score >= Evaluation.CONSISTENT_SCORE);
+		json.append(", \"malformed\": ").append(malformed);
+		return json.append('}').toString();
+	}
+
+	/**
+	 * @return loaded keys with their question numbers as JSON
+	 */
+	private String keysToJson() {
+		StringBuilder json = new StringBuilder();
+		json.append('{');
+		synchronized(keys) {
+			String separator = "";
+			for(Key key : keys.values()) {
+				json.append(separator).append(quote(key.name)).append(": [");
+				for(int i = 0; i < key.questions.size(); i++) {
+					if(i > 0) json.append(", ");
+					json.append(key.questions.get(i).getId());
+				}
+				json.append(']');
+				separator = ", ";
+			}
+		}
+		return json.append('}').toString();
+	}
+
+	/**
+	 * Decides the format of the request body, the content type wins over the first character of the body
+	 * @param body request body
+	 * @param type content type, may be null
+	 * @return true for JSON, false for CSV
+	 */
+	private static boolean isJson(String body, String type) {
+		if(type != null && type.contains("json")) return true;
+		if(type != null && (type.contains("csv") || type.contains("tab-separated"))) return false;
+		String trimmed = body.trim();
+		return trimmed.startsWith("{") || trimmed.startsWith("[");
+	}
+
+	/**
+	 * Reads whole request body as UTF-8, up to the size limit
+	 * @param exchange the request
+	 * @return the body
+	 * @throws IOException when the body cannot be read
+	 * @throws RequestException when the body is larger than the limit
+	 */
+	private String readBody(HttpExchange exchange) throws IOException, RequestException {
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		if(length != null) {
+			try {
+				if(Long.parseLong(length.trim()) > maxBodyBytes) throw bodyTooLarge();
+			} catch (NumberFormatException e) {
+				throw new RequestException(400, "Invalid Content-Length " + length);
+			}
+		}
+
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		InputStream in = exchange.getRequestBody();
+		try {
+			int read;
+			while((read = in.read(buffer)) >= 0) {
+				if(body.size() + read > maxBodyBytes) throw bodyTooLarge();
+				body.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return body.toString("UTF-8");
+	}
+
+	private RequestException bodyTooLarge() {
+		return new RequestException(413, "Request body is larger than " + maxBodyBytes + " bytes");
+	}
+
+	/**
+	 * Returns decoded value of a query parameter
+	 * @param query raw query of the request URI, may be null
+	 * @param name parameter name
+	 * @return the value or null when the parameter is missing
+	 */
+	private static String queryParameter(String query, String name) {
+		if(query == null) return null;
+		try {
+			for(String parameter : query.split("&")) {
+				int eq = parameter.indexOf('=');
+				String parameterName = URLDecoder.decode(eq < 0 ? parameter : parameter.substring(0, eq), "UTF-8");
+				if(parameterName.equals(name)) return eq < 0 ? "" : URLDecoder.decode(parameter.substring(eq + 1), "UTF-8");
+			}
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		return null;
+	}
+
+	/**
+	 * @param s String
+	 * @return JSON string literal
+	 */
+	private static String quote(String s) {
+		StringBuilder res = new StringBuilder(s.length() + 2);
+		res.append('"');
+		for(int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if(ch == '"' || ch == '\\') {
+				res.append('\\').append(ch);
+			} else if(ch < 0x20) {
+				res.append(String.format("\\u%04x", (int) ch));
+			} else {
+				res.append(ch);
+			}
+		}
+		return res.append('"').toString();
+	}
+
+	/**
+	 * Minimal parser of JSON requests. Objects are parsed to {@link Map}, arrays to {@link List},
+	 * strings and numbers to {@link String} and literals to {@link Boolean} or null.
+	 */
+	private static class JsonParser {
+		private final String text;
+		private int pos = 0;
+
+		JsonParser(String text) {
+			this.text = text;
+		}
+
+		Object parse() throws RequestException {
+			Object value = value();
+			skipWhitespace();
+			if(pos < text.length()) throw error("unexpected content");
+			return value;
+		}
+
+		private Object value() throws RequestException {
+			skipWhitespace();
+			if(pos >= text.length()) throw error("unexpected end");
+			char ch = text.charAt(pos);
+			if(ch == '{') return object();
+			if(ch == '[') return array();
+			if(ch == '"') return string();
+			if(text.startsWith("true", pos)) { pos += 4; return Boolean.TRUE; }
+			if(text.startsWith("false", pos)) { pos += 5; return Boolean.FALSE; }
+			if(text.startsWith("null", pos)) { pos += 4; return null; }
+
+			int start = pos;
+			while(pos < text.length() && "+-.eE0123456789".indexOf(text.charAt(pos)) >= 0) pos++;
+			if(pos == start) throw error("unexpected character '" + ch + "'");
+			return text.substring(start, pos);
+		}
+
+		private Map<String, Object> object() throws RequestException {
+			Map<String, Object> result = new LinkedHashMap<String, Object>();
+			pos++;
+			skipWhitespace();
+			if(consume('}')) return result;
+			do {
+				skipWhitespace();
+				if(pos >= text.length() || text.charAt(pos) != '"') throw error("expected name");
+				String name = string();
+				skipWhitespace();
+				if(!consume(':')) throw error("expected ':'");
+				result.put(name, value());
+				skipWhitespace();
+			} while(consume(','));
+			if(!consume('}')) throw error("expected '}'");
+			return result;
+		}
+
+		private List<Object> array() throws RequestException {
+			List<Object> result = new ArrayList<Object>();
+			pos++;
+			skipWhitespace();
+			if(consume(']')) return result;
+			do {
+				result.add(value());
+				skipWhitespace();
+			} while(consume(','));
+			if(!consume(']')) throw error("expected ']'");
+			return result;
+		}
+
+		private String string() throws RequestException {
+			StringBuilder result = new StringBuilder();
+			pos++;
+			while(pos < text.length()) {
+				char ch = text.charAt(pos++);
+				if(ch == '"') return result.toString();
+				if(ch != '\\') {
+					result.append(ch);
+					continue;
+				}
+				if(pos >= text.length()) break;
+				char escaped = text.charAt(pos++);
+				switch(escaped) {
+				case 'b': result.append('\b'); break;
+				case 'f': result.append('\f'); break;
+				case 'n': result.append('\n'); break;
+				case 'r': result.append('\r'); break;
+				case 't': result.append('\t'); break;
+				case 'u':
+					if(pos + 4 > text.length()) throw error("invalid escape");
+					try {
+						result.append((char) Integer.parseInt(text.substring(pos, pos + 4), 16));
+					} catch (NumberFormatException e) {
+						throw error("invalid escape");
+					}
+					pos += 4;
+					break;
+				default: result.append(escaped);
+				}
+			}
+			throw error("unterminated string");
+		}
+
+		private boolean consume(char ch) {
+			if(pos < text.length() && text.charAt(pos) == ch) {
+				pos++;
+				return true;
+			}
+			return false;
+		}
+
+		private void skipWhitespace() {
+			while(pos < text.length() && Character.isWhitespace(text.charAt(pos))) pos++;
+		}
+
+		private RequestException error(String message) {
+			return new RequestException(400, "Invalid JSON at position " + pos + ": " + message);
+		}
+	}
+
+	/**
+	 * @return usage description of the command line arguments
+	 */
+	private static String usage() {
+		return "Usage: EvaluationServer --key [NAME=]FILE [--key [NAME=]FILE ...] [--port N] [evaluation options]\n"
+			+ "  --key [NAME=]FILE   answer key kept in memory, a .csv/.tsv file or a workbook with question sheets,\n"
+			+ "                      named by the file name without extension when NAME is not given\n"
+			+ "  --port N            port to listen on (default " + DEFAULT_PORT + ")\n"
+			+ "  --max-body N        largest accepted request body in bytes (default " + DEFAULT_MAX_BODY_BYTES + ")\n"
+			+ EvaluationOptions.usage();
+	}
+
+	/**
+	 * @param args String
+	 */
+	public static void main(String[] args) {
+		int port = DEFAULT_PORT;
+		int maxBodyBytes = DEFAULT_MAX_BODY_BYTES;
+		Map<String, String> keyFiles = new LinkedHashMap<String, String>();
+		List<String> evaluationArgs = new ArrayList<String>();
+		EvaluationOptions options = null;
+
+		try {
+			for(int i = 0; i < args.length; i++) {
+				if(args[i].equals("--key") && i + 1 < args.length) {
+					String key = args[++i];
+					int eq = key.indexOf('=');
+					if(eq > 0) {
+						keyFiles.put(key.substring(0, eq), key.substring(eq + 1));
+					} else {
+						String name = new File(key).getName();
+						keyFiles.put(name.lastIndexOf('.') > 0 ? name.substring(0, name.lastIndexOf('.')) : name, key);
+					}
+				} else if(args[i].equals("--port") && i + 1 < args.length) {
+					port = Integer.parseInt(args[++i]);
+				} else if(args[i].equals("--max-body") && i + 1 < args.length) {
+					maxBodyBytes = Integer.parseInt(args[++i]);
+					if(maxBodyBytes <= 0) throw new IllegalArgumentException("--max-body must be positive");
+				} else {
+					evaluationArgs.add(args[i]);
+				}
+			}
+			if(keyFiles.isEmpty()) throw new IllegalArgumentException("At least one key is required");
+			options = EvaluationOptions.fromArgs(evaluationArgs.toArray(new String[evaluationArgs.size()]));
+		} catch (IllegalArgumentException e) {
+			System.out.println(e.getMessage());
+			System.out.println(usage());
+			return;
+		}
+
+		final EvaluationServer server = new EvaluationServer(options);
+		server.setMaxBodyBytes(maxBodyBytes);
+		try {
+			for(Map.Entry<String, String> keyFile : keyFiles.entrySet()) {
+				server.loadKey(keyFile.getKey(), keyFile.getValue());
+			}
+			server.start(port);
+			Runtime.getRuntime().addShutdownHook(new Thread() {
+				@Override
+				public void run() {
+					server.stop();
+				}
+			});
+		} catch (Exception e) {
+			e.printStackTrace();
+			server.stop();
+		}
+	}
+}
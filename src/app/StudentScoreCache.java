@@ -0,0 +1,175 @@
+package app;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scores of students from the previous run, stored in a sidecar file next to the workbook.
+ * Each student is identified by the result sheet and the "Code" header of its column and carries
+ * a hash of its answers, so only students whose answers changed have to be evaluated again.
+ * The whole cache is dropped when the answer key changes.
+ * @author Pavel Janecka, Karel Petranek
+ */
+class StudentScoreCache {
+
+	private static final String KEY_PREFIX = "# key ";
+	
+	/**
+	 * Cached score of one student
+	 */
+	private static class Entry {
+		long answersHash;
+		int score;
+		
+		Entry(long answersHash, int score) {
+			this.answersHash = answersHash;
+			this.score = score;
+		}
+	}
+	
+	private final File file;
+	private final String keyHash;
+	private final Map<String, Entry> previous;
+	private final ConcurrentMap<String, Entry> current = new ConcurrentHashMap<String, Entry>();
+	private final AtomicInteger hits = new AtomicInteger();
+	private final AtomicInteger misses = new AtomicInteger();
+	
+	private StudentScoreCache(File file, String keyHash, Map<String, Entry> previous) {
+		this.file = file;
+		this.keyHash = keyHash;
+		this.previous = previous;
+	}
+	
+	/**
+	 * Returns the sidecar cache file of the given workbook
+	 * @param workbookFile path to the workbook
+	 * @return cache file
+	 */
+	public static File fileFor(String workbookFile) {
+		return new File(workbookFile + ".scores");
+	}
+	
+	/**
+	 * Loads the cache from the given file. When the file doesn't exist or was written for a different
+	 * answer key, the cache is empty.
+	 * @param file cache file
+	 * @param keyHash hash of the current answer key
+	 * @return {@link StudentScoreCache} instance
+	 * @throws IOException when the file cannot be read
+	 */
+	public static StudentScoreCache load(File file, String keyHash) throws IOException {
+		Map<String, Entry> previous = new HashMap<String, Entry>();
+		if(!file.exists()) return new StudentScoreCache(file, keyHash, previous);
+		
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+		try {
+			String line = reader.readLine();
+			if(line == null || !line.equals(KEY_PREFIX + keyHash)) return new StudentScoreCache(file, keyHash, previous);
+			
+			while((line = reader.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if(fields.length != 4) continue;
+				try {
+					previous.put(key(unescape(fields[0]), unescape(fields[1])), new Entry(Long.parseLong(fields[2]), Integer.parseInt(fields[3])));
+				} catch (NumberFormatException e) {
+					// Skip damaged line, the student is evaluated again
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		return new StudentScoreCache(file, keyHash, previous);
+	}
+	
+	/**
+	 * Returns score of the student from the previous run if its answers didn't change
+	 * @param sheet result sheet name
+	 * @param code student code from the first row
+	 * @param answersHash hash of the current answers of the student
+	 * @return cached score or null when the student has to be evaluated
+	 */
+	public Integer lookup(String sheet, String code, long answersHash) {
+		Entry entry = code.isEmpty() ? null : previous.get(key(sheet, code));
+		if(entry == null || entry.answersHash != answersHash) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return entry.score;
+	}
+	
+	/**
+	 * Records score of the student for the next run
+	 * @param sheet result sheet name
+	 * @param code student code from the first row
+	 * @param answersHash hash of the answers of the student
+	 * @param score evaluated score
+	 */
+	public void store(String sheet, String code, long answersHash, int score) {
+		if(code.isEmpty()) return;
+		current.put(key(sheet, code), new Entry(answersHash, score));
+	}
+	
+	/**
+	 * @return number of students whose cached score was used
+	 */
+	public int getHits() {
+		return hits.get();
+	}
+	
+	/**
+	 * @return number of students that had to be evaluated
+	 */
+	public int getMisses() {
+		return misses.get();
+	}
+	
+	/**
+	 * Writes scores recorded in this run to the cache file
+	 * @throws IOException when the file cannot be written
+	 */
+	public void save() throws IOException {
+		Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+		try {
+			writer.write(KEY_PREFIX + keyHash + "\n");
+			for(Map.Entry<String, Entry> entry : current.entrySet()) {
+				writer.write(entry.getKey() + "\t" + entry.getValue().answersHash + "\t" + entry.getValue().score + "\n");
+			}
+		} finally {
+			writer.close();
+		}
+	}
+	
+	private static String key(String sheet, String code) {
+		return escape(sheet) + "\t" + escape(code);
+	}
+	
+	private static String escape(String s) {
+		return s.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n");
+	}
+	
+	private static String unescape(String s) {
+		StringBuilder res = new StringBuilder(s.length());
+		for(int i = 0; i < s.length(); i++) {
+			char ch = s.charAt(i);
+			if(ch == '\\' && i + 1 < s.length()) {
+				ch = s.charAt(++i);
+				if(ch == 't') ch = '\t';
+				else if(ch == 'n') ch = '\n';
+			}
+			res.append(ch);
+		}
+		return res.toString();
+	}
+}
@@ -0,0 +1,134 @@
+package bench;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+
+/**
+ * @author Pavel Janecka, Karel Petranek
+ * One measured operation of the benchmark suite. The harness runs the operation repeatedly
+ * for a warmup period and then for the measured period, reporting time and allocated bytes per operation.
+ * Operations are run in batches long enough that checking the clock after each batch doesn't
+ * add to the measured time. Results of all operations are summed into {@link #sink}.
+ */
+public abstract class Benchmark {
+	/**
+	 * Keeps results of the measured operations alive so the JIT cannot remove them
+	 */
+	static volatile long sink;
+	
+	/**
+	 * Minimal duration of a batch of operations run between two checks of the clock
+	 */
+	private static final long MIN_BATCH_NANOS = 1000000L;
+	
+	/**
+	 * Maximal number of operations in a batch
+	 */
+	private static final int MAX_BATCH_SIZE = 1 << 20;
+	
+	private final String name;
+	private int batchSize = 1;
+	
+	/**
+	 * Creates a benchmark
+	 * @param name Name shown in the report
+	 */
+	protected Benchmark(String name)  {
+		this.name = name;
+	}
+	
+	/**
+	 * @return Name shown in the report
+	 */
+	public String getName()  {
+		return name;
+	}
+	
+	/**
+	 * Runs the measured operation once
+	 * @return Any value depending on the work done, it is consumed by the harness
+	 */
+	protected abstract long run();
+	
+	/**
+	 * Result of one measurement
+	 */
+	public static class Result  {
+		/** Measured operations */
+		public long operations;
+		/** Average time of one operation in nanoseconds */
+		public double nanosPerOperation;
+		/** Average allocated bytes per operation, -1 when the JVM cannot measure allocations */
+		public double bytesPerOperation;
+		/** Operations run between two checks of the clock */
+		public int batchSize;
+	}
+	
+	/**
+	 * Warms the operation up and measures it
+	 * @param warmupMillis Duration of the warmup
+	 * @param measureMillis Duration of the measurement
+	 * @return Measured {@link Result}
+	 */
+	public Result measure(long warmupMillis, long measureMillis)  {
+		loop(warmupMillis);
+		calibrate();
+		
+		long allocatedBefore = allocatedBytes();
+		long start = System.nanoTime();
+		long operations = loop(measureMillis);
+		long elapsed = System.nanoTime() - start;
+		long allocatedAfter = allocatedBytes();
+		
+		Result result = new Result();
+		result.operations = operations;
+		result.nanosPerOperation = (double) elapsed / operations;
+		result.bytesPerOperation = allocatedBefore < 0 ? -1 : (double) (allocatedAfter - allocatedBefore) / operations;
+		result.batchSize = batchSize;
+		return result;
+	}
+	
+	/**
+	 * Doubles the batch size until a batch takes at least {@link #MIN_BATCH_NANOS}
+	 */
+	private void calibrate()  {
+		while (batchSize < MAX_BATCH_SIZE)  {
+			long start = System.nanoTime();
+			runBatch();
+			if (System.nanoTime() - start >= MIN_BATCH_NANOS)
+				break;
+			batchSize *= 2;
+		}
+	}
+	
+	private long loop(long millis)  {
+		long deadline = System.nanoTime() + millis * 1000000L;
+		long operations = 0;
+		do  {
+			runBatch();
+			operations += batchSize;
+		} while (System.nanoTime() < deadline);
+		return operations;
+	}
+	
+	private void runBatch()  {
+		long value = 0;
+		for (int i = 0; i < batchSize; i++)
+			value += run();
+		sink += value;
+	}
+	
+	/**
+	 * Returns bytes allocated by the current thread so far
+	 * @return Allocated bytes or -1 when not supported by the JVM
+	 */
+	private static long allocatedBytes()  {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)  {
+			com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+			if (sunThreads.isThreadAllocatedMemorySupported() && sunThreads.isThreadAllocatedMemoryEnabled())
+				return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,339 @@
+package bench;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import model.Answer;
+import model.Evaluation;
+import model.Model;
+import model.ModelsAndAnswer;
+import model.Question;
+
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+
+import excel.ExcelSheet;
+
+
+/**
+ * @author Pavel Janecka, Karel Petranek
+ * Benchmarks of the evaluation hot paths on a generated test with 12 questions. Every benchmark
+ * is run for each combination of cohort size and number of choices per answer. With --fork each
+ * benchmark runs in its own JVM, so code compiled for one benchmark doesn't affect the others.
+ * <p>
+ * Usage: EvaluationBenchmarks [--cohorts N,N,..] [--choices N,N,..] [--warmup MS] [--measure MS] [--fork] [--only NAME]
+ */
+public class EvaluationBenchmarks {
+	private static final int QUESTION_COUNT = 12;
+	private static final int REFERENCE_ANSWERS_PER_QUESTION = 8;
+	private static final long SEED = 42;
+	
+	/**
+	 * Student columns of the generated result sheet, HSSF sheets have at most 256 columns
+	 */
+	private static final int SHEET_STUDENT_COLUMNS = 255;
+	
+	/**
+	 * Generated test and cohort of students
+	 */
+	static class Fixture  {
+		final int cohortSize;
+		final int choiceCount;
+		final List<Question> questions = new ArrayList<Question>();
+		final String[] modelStrings;
+		/** All model strings of one or two models, more than the parse cache of {@link Model} keeps */
+		final String[] distinctModelStrings;
+		/** Answer strings of the students, [student][question] */
+		final String[][] answerStrings;
+		/** Parsed answers of the students indexed by question ID, [student][question id] */
+		final Answer[][] answers;
+		/** Copies of the parsed answers, so equals compares two different instances */
+		final Answer[][] answerCopies;
+		/** Answer IDs of the students, [student][question index] */
+		final int[][] answerIds;
+		final ExcelSheet resultSheet;
+		
+		Fixture(int cohortSize, int choiceCount)  {
+			this.cohortSize = cohortSize;
+			this.choiceCount = choiceCount;
+			Random random = new Random(SEED);
+			
+			String[][] references = new String[QUESTION_COUNT][REFERENCE_ANSWERS_PER_QUESTION];
+			modelStrings = new String[QUESTION_COUNT * REFERENCE_ANSWERS_PER_QUESTION];
+			for (int q = 0; q < QUESTION_COUNT; q++)  {
+				List<ModelsAndAnswer> answerModels = new ArrayList<ModelsAndAnswer>();
+				for (int i = 0; i < REFERENCE_ANSWERS_PER_QUESTION; i++)  {
+					references[q][i] = randomAnswer(random, choiceCount);
+					String models = randomModels(random);
+					modelStrings[q * REFERENCE_ANSWERS_PER_QUESTION + i] = models;
+					answerModels.add(new ModelsAndAnswer(new Answer(references[q][i], q + 1), Model.parseModels(models)));
+				}
+				questions.add(new Question(q + 1, answerModels));
+			}
+			
+			// Three quarters of the answers match a reference answer, like in a real cohort
+			answerStrings = new String[cohortSize][QUESTION_COUNT];
+			answers = new Answer[cohortSize][QUESTION_COUNT + 1];
+			answerCopies = new Answer[cohortSize][QUESTION_COUNT + 1];
+			for (int s = 0; s < cohortSize; s++)  {
+				for (int q = 0; q < QUESTION_COUNT; q++)  {
+					String answer = random.nextInt(4) == 0 ? randomAnswer(random, choiceCount) : references[q][random.nextInt(REFERENCE_ANSWERS_PER_QUESTION)];
+					answerStrings[s][q] = answer;
+					answers[s][q + 1] = new Answer(answer, q + 1);
+					answerCopies[s][q + 1] = new Answer(answer, q + 1);
+				}
+			}
+			
+			answerIds = new int[cohortSize][QUESTION_COUNT];
+			for (int s = 0; s < cohortSize; s++)
+				for (int q = 0; q < QUESTION_COUNT; q++)
+					answerIds[s][q] = questions.get(q).answerIdOf(answers[s][q + 1]);
+			
+			resultSheet = createResultSheet();
+			distinctModelStrings = allModelStrings();
+		}
+		
+		private static String[] allModelStrings()  {
+			List<String> single = new ArrayList<String>();
+			for (int m = 1; m <= 11; m++)  {
+				single.add("M" + m);
+				for (int sub = 1; sub <= 3; sub++)
+					single.add("M" + m + ",S" + sub);
+			}
+			List<String> res = new ArrayList<String>(single);
+			for (String first : single)
+				for (String second : single)
+					res.add(first + "|" + second);
+			return res.toArray(new String[res.size()]);
+		}
+		
+		private static String randomAnswer(Random random, int choiceCount)  {
+			StringBuilder res = new StringBuilder();
+			for (int c = 0; c < choiceCount; c++)  {
+				if (c > 0)
+					res.append('|');
+				res.append(random.nextInt(20)).append(',').append(random.nextInt(20));
+				if (random.nextBoolean())
+					res.append(',').append(random.nextInt(20));
+			}
+			return res.toString();
+		}
+		
+		private static String randomModels(Random random)  {
+			StringBuilder res = new StringBuilder();
+			int count = 1 + random.nextInt(2);
+			for (int i = 0; i < count; i++)  {
+				if (i > 0)
+					res.append('|');
+				res.append('M').append(1 + random.nextInt(11));
+				if (random.nextBoolean())
+					res.append(",S").append(1 + random.nextInt(3));
+			}
+			return res.toString();
+		}
+		
+		/**
+		 * Creates a result sheet in the evaluated layout, one column per student and one row per question.
+		 * Larger cohorts than {@link #SHEET_STUDENT_COLUMNS} reuse the columns. Every fifth answer is left blank.
+		 */
+		private ExcelSheet createResultSheet()  {
+			int columns = Math.min(cohortSize, SHEET_STUDENT_COLUMNS);
+			Sheet sheet = new HSSFWorkbook().createSheet("Results");
+			Row header = sheet.createRow(0);
+			header.createCell(0).setCellValue("Code");
+			for (int s = 0; s < columns; s++)
+				header.createCell(s + 1).setCellValue("Student " + s);
+			for (int q = 0; q < QUESTION_COUNT; q++)  {
+				Row row = sheet.createRow(q + 1);
+				row.createCell(0).setCellValue("#" + (q + 1));
+				for (int s = 0; s < columns; s++)  {
+					if ((s + q) % 5 != 0)
+						row.createCell(s + 1).setCellValue(answerStrings[s][q]);
+				}
+			}
+			return new ExcelSheet(sheet);
+		}
+	}
+	
+	private static List<Benchmark> benchmarks(final Fixture f)  {
+		List<Benchmark> res = new ArrayList<Benchmark>();
+		
+		res.add(new Benchmark("Answer(String,int)")  {
+			@Override
+			protected long run()  {
+				long res = 0;
+				for (int s = 0; s < f.cohortSize; s++)
+					for (int q = 0; q < QUESTION_COUNT; q++)
+						res += new Answer(f.answerStrings[s][q], q + 1).getChoiceCount();
+				return res;
+			}
+		});
+		
+		res.add(new Benchmark("Answer.equals")  {
+			@Override
+			protected long run()  {
+				long res = 0;
+				for (int s = 0; s < f.cohortSize; s++)
+					for (int q = 1; q <= QUESTION_COUNT; q++)
+						if (f.answers[s][q].equals(f.answerCopies[(s + 1) % f.cohortSize][q]))
+							res++;
+				return res;
+			}
+		});
+		
+		// Strings are taken in a cycle longer than the parse cache, so every call misses the LRU cache
+		res.add(new Benchmark("Model.parseModels")  {
+			private int next = 0;
+			
+			@Override
+			protected long run()  {
+				long res = 0;
+				for (int s = 0; s < f.cohortSize; s++)  {
+					res += Model.parseModels(f.distinctModelStrings[next]).size();
+					next = (next + 1) % f.distinctModelStrings.length;
+				}
+				return res;
+			}
+		});
+		
+		res.add(new Benchmark("Model.parseModels (cached)")  {
+			@Override
+			protected long run()  {
+				long res = 0;
+				for (int s = 0; s < f.cohortSize; s++)
+					res += Model.parseModels(f.modelStrings[s % f.modelStrings.length]).size();
+				return res;
+			}
+		});
+		
+		res.add(new Benchmark("Question.modelsForAnswer")  {
+			@Override
+			protected long run()  {
+				long res = 0;
+				for (int s = 0; s < f.cohortSize; s++)
+					for (Question q : f.questions)
+						res += q.modelsForAnswer(f.answers[s][q.getId()]).size();
+				return res;
+			}
+		});
+		
+		res.add(new Benchmark("Evaluation.evaluate")  {
+			@Override
+			protected long run()  {
+				long res = 0;
+				for (int s = 0; s < f.cohortSize; s++)
+					res += new Evaluation().evaluate(f.questions, f.answers[s]);
+				return res;
+			}
+		});
+		
+		res.add(new Benchmark("Evaluation.evaluateBatch")  {
+			@Override
+			protected long run()  {
+				long res = 0;
+				for (int score : Evaluation.evaluateBatch(f.questions, f.answerIds))
+					res += score;
+				return res;
+			}
+		});
+		
+		res.add(new Benchmark("ExcelSheet.getColumn")  {
+			@Override
+			protected long run()  {
+				long res = 0;
+				for (int s = 0; s < f.cohortSize; s++)
+					res += f.resultSheet.getColumn(1 + s % SHEET_STUDENT_COLUMNS).size();
+				return res;
+			}
+		});
+		
+		res.add(new Benchmark("ExcelSheet.getColumnWithEmptyCells")  {
+			@Override
+			protected long run()  {
+				long res = 0;
+				for (int s = 0; s < f.cohortSize; s++)
+					res += f.resultSheet.getColumnWithEmptyCells(1 + s % SHEET_STUDENT_COLUMNS).size();
+				return res;
+			}
+		});
+		
+		return res;
+	}
+	
+	private static int[] parseList(String value)  {
+		String[] parts = value.split(",");
+		int[] res = new int[parts.length];
+		for (int i = 0; i < parts.length; i++)
+			res[i] = Integer.parseInt(parts[i].trim());
+		return res;
+	}
+	
+	/**
+	 * Runs all benchmarks and prints a table with the results
+	 * @param args Command line arguments, see the class description
+	 * @throws Exception When a forked benchmark cannot be run
+	 */
+	public static void main(String[] args) throws Exception  {
+		int[] cohorts = { 100, 1000, 10000 };
+		int[] choices = { 1, 3 };
+		long warmup = 1000;
+		long measure = 2000;
+		boolean fork = false;
+		boolean header = true;
+		String only = null;
+		for (int i = 0; i < args.length; i++)  {
+			if (args[i].equals("--fork"))
+				fork = true;
+			else if (args[i].equals("--no-header"))
+				header = false;
+			else if (i + 1 == args.length)
+				throw new IllegalArgumentException("Missing value of " + args[i]);
+			else if (args[i].equals("--cohorts"))
+				cohorts = parseList(args[++i]);
+			else if (args[i].equals("--choices"))
+				choices = parseList(args[++i]);
+			else if (args[i].equals("--warmup"))
+				warmup = Long.parseLong(args[++i]);
+			else if (args[i].equals("--measure"))
+				measure = Long.parseLong(args[++i]);
+			else if (args[i].equals("--only"))
+				only = args[++i];
+			else
+				throw new IllegalArgumentException("Unknown argument " + args[i]);
+		}
+		
+		if (header)
+			System.out.println(String.format("%-36s %8s %8s %14s %14s %14s %8s", "Benchmark", "cohort", "choices", "us/op", "ns/student", "bytes/student", "batch"));
+		for (int cohort : cohorts)  {
+			for (int choice : choices)  {
+				Fixture fixture = new Fixture(cohort, choice);
+				for (Benchmark b : benchmarks(fixture))  {
+					if (only != null && !only.equals(b.getName()))
+						continue;
+					if (fork)  {
+						runForked(b.getName(), cohort, choice, warmup, measure);
+						continue;
+					}
+					Benchmark.Result r = b.measure(warmup, measure);
+					System.out.println(String.format("%-36s %8d %8d %14.2f %14.1f %14.1f %8d", b.getName(), cohort, choice,
+							r.nanosPerOperation / 1000, r.nanosPerOperation / cohort, r.bytesPerOperation < 0 ? Double.NaN : r.bytesPerOperation / cohort, r.batchSize));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Runs one benchmark in a new JVM with the same class path, its result row is printed by the child
+	 */
+	private static void runForked(String name, int cohort, int choice, long warmup, long measure) throws Exception  {
+		String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), EvaluationBenchmarks.class.getName(),
+				"--cohorts", Integer.toString(cohort), "--choices", Integer.toString(choice),
+				"--warmup", Long.toString(warmup), "--measure", Long.toString(measure),
+				"--only", name, "--no-header").inheritIO().start();
+		if (process.waitFor() != 0)
+			throw new IllegalStateException("Benchmark " + name + " failed with exit code " + process.exitValue());
+	}
+}
@@ -0,0 +1,180 @@
+package csv;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * @author Pavel Janecka, Karel Petranek
+ * Streaming reader of CSV and TSV files. Records are read one by one through a fixed buffer,
+ * fields may be quoted with double quotes (a quote inside is doubled) and may then contain
+ * delimiters and line breaks. A byte order mark at the start of the stream is skipped.
+ * The field array is reused between records.
+ */
+public class CsvReader {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private final Reader reader;
+	private final char delimiter;
+	private final char[] buffer = new char[BUFFER_SIZE];
+	private int position = 0;
+	private int limit = 0;
+	
+	private final StringBuilder field = new StringBuilder();
+	private String[] fields = new String[16];
+	private int fieldCount = 0;
+	private int recordIndex = -1;
+	
+	/**
+	 * Creates a reader of the given stream
+	 * @param reader Source of the data, closed by {@link #close()}
+	 * @param delimiter Field delimiter, usually comma or tab
+	 */
+	public CsvReader(Reader reader, char delimiter)  {
+		this.reader = reader;
+		this.delimiter = delimiter;
+	}
+	
+	/**
+	 * Returns delimiter for the given file name, tab for .tsv and .tab files and comma otherwise
+	 * @param fileName Name of the file
+	 * @return Field delimiter
+	 */
+	public static char delimiterFor(String fileName)  {
+		String lower = fileName.toLowerCase();
+		return lower.endsWith(".tsv") || lower.endsWith(".tab") ? '\t' : ',';
+	}
+	
+	/**
+	 * Returns true if the given file name has an extension of CSV or TSV file
+	 * @param fileName Name of the file
+	 * @return True for .csv, .tsv and .tab files
+	 */
+	public static boolean isDelimitedFile(String fileName)  {
+		String lower = fileName.toLowerCase();
+		return lower.endsWith(".csv") || lower.endsWith(".tsv") || lower.endsWith(".tab");
+	}
+	
+	private int read() throws IOException  {
+		if (position == limit)  {
+			limit = reader.read(buffer, 0, buffer.length);
+			position = 0;
+			if (limit <= 0)  {
+				limit = 0;
+				return -1;
+			}
+		}
+		return buffer[position++];
+	}
+	
+	private void unread()  {
+		position--;
+	}
+	
+	private void endField()  {
+		if (fieldCount == fields.length)
+			fields = Arrays.copyOf(fields, fields.length * 2);
+		fields[fieldCount++] = field.length() == 0 ? "" : field.toString();
+		field.setLength(0);
+	}
+	
+	/**
+	 * Reads the next record
+	 * @return False when the end of the stream was reached
+	 * @throws IOException When the stream cannot be read
+	 */
+	public boolean next() throws IOException  {
+		fieldCount = 0;
+		field.setLength(0);
+		
+		int ch = read();
+		// Byte order mark written by some editors (e.g. Excel "CSV UTF-8") is not a part of the first field
+		if (ch == '\uFEFF' && recordIndex == -1)
+			ch = read();
+		if (ch == -1)
+			return false;
+		
+		boolean quoted = false;
+		while (true)  {
+			if (quoted)  {
+				if (ch == -1)  {
+					// Unterminated quote, take the rest of the stream as the field
+					endField();
+					break;
+				}
+				if (ch == '"')  {
+					int following = read();
+					if (following == '"')  {
+						field.append('"');
+					} else  {
+						quoted = false;
+						if (following != -1)
+							unread();
+					}
+				} else  {
+					field.append((char) ch);
+				}
+			} else if (ch == -1 || ch == '\n')  {
+				endField();
+				break;
+			} else if (ch == '\r')  {
+				int following = read();
+				if (following != '\n' && following != -1)
+					unread();
+				endField();
+				break;
+			} else if (ch == delimiter)  {
+				endField();
+			} else if (ch == '"' && field.length() == 0)  {
+				quoted = true;
+			} else  {
+				field.append((char) ch);
+			}
+			ch = read();
+		}
+		recordIndex++;
+		return true;
+	}
+	
+	/**
+	 * @return Number of fields of the current record
+	 */
+	public int getFieldCount()  {
+		return fieldCount;
+	}
+	
+	/**
+	 * Returns field of the current record. Missing fields are returned as empty strings.
+	 * @param index Index of the field (column)
+	 * @return Field value, never null
+	 */
+	public String get(int index)  {
+		return index < fieldCount ? fields[index] : "";
+	}
+	
+	/**
+	 * Returns number of fields of the current record without trailing empty fields
+	 * @return Number of fields up to the last non-empty one
+	 */
+	public int getTrimmedFieldCount()  {
+		int count = fieldCount;
+		while (count > 0 && fields[count - 1].isEmpty())
+			count--;
+		return count;
+	}
+	
+	/**
+	 * @return Zero based index of the current record (row)
+	 */
+	public int getRecordIndex()  {
+		return recordIndex;
+	}
+	
+	/**
+	 * Closes the underlying stream
+	 * @throws IOException When the stream cannot be closed
+	 */
+	public void close() throws IOException  {
+		reader.close();
+	}
+}
@@ -0,0 +1,75 @@
+package csv;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * @author Pavel Janecka, Karel Petranek
+ * Writer of CSV and TSV files. Fields containing the delimiter, quotes or line breaks are quoted.
+ */
+public class CsvWriter {
+	private final Writer writer;
+	private final char delimiter;
+	private int fieldIndex = 0;
+	
+	/**
+	 * Creates a writer to the given stream
+	 * @param writer Target of the data, closed by {@link #close()}
+	 * @param delimiter Field delimiter, usually comma or tab
+	 */
+	public CsvWriter(Writer writer, char delimiter)  {
+		this.writer = writer;
+		this.delimiter = delimiter;
+	}
+	
+	/**
+	 * Writes one field of the current record
+	 * @param value Field value
+	 * @throws IOException When the stream cannot be written
+	 */
+	public void write(String value) throws IOException  {
+		if (fieldIndex++ > 0)
+			writer.write(delimiter);
+		
+		boolean quote = false;
+		for (int i = 0; i < value.length() && !quote; i++)  {
+			char ch = value.charAt(i);
+			quote = ch == delimiter || ch == '"' || ch == '\n' || ch == '\r';
+		}
+		if (quote)  {
+			writer.write('"');
+			writer.write(value.replace("\"", "\"\""));
+			writer.write('"');
+		} else  {
+			writer.write(value);
+		}
+	}
+	
+	/**
+	 * Ends the current record
+	 * @throws IOException When the stream cannot be written
+	 */
+	public void endRecord() throws IOException  {
+		writer.write('\n');
+		fieldIndex = 0;
+	}
+	
+	/**
+	 * Copies all fields of the current record of the reader as one record
+	 * @param reader {@link CsvReader} positioned at a record
+	 * @throws IOException When the stream cannot be written
+	 */
+	public void copyRecord(CsvReader reader) throws IOException  {
+		for (int i = 0; i < reader.getFieldCount(); i++)
+			write(reader.get(i));
+		endRecord();
+	}
+	
+	/**
+	 * Flushes and closes the underlying stream
+	 * @throws IOException When the stream cannot be closed
+	 */
+	public void close() throws IOException  {
+		writer.close();
+	}
+}
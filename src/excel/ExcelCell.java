@@ -10,6 +10,13 @@ import org.apache.poi.ss.usermodel.CellStyle;
 public class ExcelCell {
 	Cell cell;
 	
+	// Detached value used by read-only cells that are not backed by a POI cell
+	private int x, y;
+	private int type = Cell.CELL_TYPE_BLANK;
+	private String text;
+	private double number;
+	private boolean detached;
+	
 	/**
 	 * Create an empty cell
 	 */
@@ -17,6 +24,24 @@ public class ExcelCell {
 		cell = null;
 	}
 	
+	/**
+	 * Create a read-only cell holding the given value. Such cell is not backed by a POI cell
+	 * and cannot be modified.
+	 * @param x Column index
+	 * @param y Row index
+	 * @param type One of the Cell.CELL_TYPE_* constants
+	 * @param text String value (used for string cells)
+	 * @param number Numeric value (used for numeric cells)
+	 */
+	ExcelCell(int x, int y, int type, String text, double number)  {
+		this.x = x;
+		this.y = y;
+		this.type = type;
+		this.text = text;
+		this.number = number;
+		this.detached = true;
+	}
+	
 	/**
 	 * Create a cell from the given POI cell
 	 * @param cell POI cell
@@ -31,6 +56,8 @@ public class ExcelCell {
 	 * @return String content of the cell
 	 */
 	public String asString()  {
+		if (detached)
+			return detachedString();
 		if (cell == null)
 			return "";
 		
@@ -50,12 +77,34 @@ public class ExcelCell {
 		return res;		
 	}
 	
+	private String detachedString()  {
+		switch (type)  {
+		case Cell.CELL_TYPE_BOOLEAN:
+			return Boolean.toString(number != 0);
+		case Cell.CELL_TYPE_NUMERIC:
+			return Double.toString(number);
+		case Cell.CELL_TYPE_STRING:
+			return text;
+		}
+		return "";
+	}
+	
 	/**
 	 * Interprets the cell as a number. If the cell cannot be interpreted as
 	 * a number (either is not numeric or its string value is not convertible to double), 0 is returned.
 	 * @return Numeric representation of the cell
 	 */
 	public double asNumber()  {
+		if (detached)  {
+			if (type == Cell.CELL_TYPE_NUMERIC)
+				return number;
+			if (type == Cell.CELL_TYPE_STRING)  {
+				try {
+					return Double.valueOf(text);
+				} catch (NumberFormatException e) { }
+			}
+			return 0;
+		}
 		if (cell == null)
 			return 0;
 		
@@ -69,11 +118,23 @@ public class ExcelCell {
 		return 0;
 	}
 	
+	/**
+	 * Returns true if the cell holds a number
+	 * @return True if the cell is numeric
+	 */
+	public boolean isNumeric()  {
+		if (detached)
+			return type == Cell.CELL_TYPE_NUMERIC;
+		return cell != null && cell.getCellType() == Cell.CELL_TYPE_NUMERIC;
+	}
+	
 	/**
 	 * Returns column index of the cell (x coordinate)
 	 * @return Column index
 	 */
 	public int getX()  {
+		if (detached)
+			return x;
 		return cell == null ? 0 : cell.getColumnIndex();
 	}
 	
@@ -82,6 +143,8 @@ public class ExcelCell {
 	 * @return Row index
 	 */
 	public int getY()  {
+		if (detached)
+			return y;
 		return cell == null ? 0 : cell.getRowIndex();
 	}
 	
@@ -90,6 +153,8 @@ public class ExcelCell {
 	 * @return True if the cell is blank
 	 */
 	public boolean isEmpty()  {
+		if (detached)
+			return type == Cell.CELL_TYPE_BLANK;
 		return cell == null || cell.getCellType() == Cell.CELL_TYPE_BLANK;
 	}
 	
@@ -100,6 +165,7 @@ public class ExcelCell {
 	 * @see ExcelWorkbook#getRegistredFont(String)
 	 */
 	public void setFont(CellStyle font)  {
+		checkWritable();
 		cell.setCellStyle(font);
 	}
 	
@@ -108,6 +174,7 @@ public class ExcelCell {
 	 * @param text The text to set
 	 */
 	public void setValue(String text)  {
+		checkWritable();
 		cell.setCellValue(text == null ? "" : text);
 	}
 	
@@ -116,6 +183,7 @@ public class ExcelCell {
 	 * @param num The integer to set
 	 */
 	public void setValue(int num)  {
+		checkWritable();
 		cell.setCellValue(num);
 	}
 	
@@ -124,9 +192,24 @@ public class ExcelCell {
 	 * @param num The number to set
 	 */
 	public void setValue(double num)  {
+		checkWritable();
 		cell.setCellValue(num);
 	}
 	
+	/**
+	 * Returns true if this cell was read by a read-only workbook and cannot be modified
+	 * @return True if the cell is read-only
+	 * @see ExcelWorkbook#openReadOnly(String)
+	 */
+	public boolean isReadOnly()  {
+		return detached;
+	}
+	
+	private void checkWritable()  {
+		if (detached)
+			throw new UnsupportedOperationException("Cannot modify a cell of a read-only workbook");
+	}
+	
 	@Override
 	public String toString()  {
 		return asString();
@@ -6,6 +6,7 @@ import org.apache.poi.ss.formula.functions.Column;
 import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Row;
 import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFCell;
 
 /**
  * @author KarelPetranek
@@ -126,6 +127,34 @@ public class ExcelSheet {
 		return getRowWithEmptyCells(index);
 	}
 	
+	/**
+	 * Returns a cell at the given coordinates, creating the row and the cell when they don't exist yet
+	 * @param x Column
+	 * @param y Row
+	 * @return Writable cell at the given coordinates
+	 */
+	public ExcelCell createCell(int x, int y)  {
+		if (sheet == null)
+			return new ExcelCell();
+		Row row = sheet.getRow(y);
+		if (row == null)
+			row = sheet.createRow(y);
+		Cell cell = row.getCell(x);
+		if (cell == null)
+			cell = row.createCell(x);
+		return new ExcelCell(cell);
+	}
+	
+	/**
+	 * Index of the last row in the sheet (zero-based)
+	 * @return Last row index or -1 when the sheet has no rows
+	 */
+	public int getLastRowIndex()  {
+		if (sheet == null || sheet.getPhysicalNumberOfRows() == 0)
+			return -1;
+		return sheet.getLastRowNum();
+	}
+	
 	/**
 	 * Returns column at the given index. The column contains only elements between the first and last non-blank cells.
 	 * @param index Column index
@@ -133,7 +162,7 @@ public class ExcelSheet {
 	 */
 	public ExcelColumn getColumn(int index)  {
 		ExcelColumn res = new ExcelColumn(index);
-		if (sheet == null)
+		if (!isValid())
 			return res;
 		
 		int lastNonEmptyCell = -1;
@@ -151,7 +180,7 @@ public class ExcelSheet {
 	 */
 	public ExcelColumn getColumnWithEmptyCells(int index) {
 		ExcelColumn res = new ExcelColumn(index);
-		if (sheet == null)
+		if (!isValid())
 			return res;
 		
 		fillRawColumn(index, res);
@@ -168,7 +197,8 @@ public class ExcelSheet {
 	 */
 	private int fillRawColumn(int index, ExcelColumn res) {
 		int lastNonEmptyCell = -1;
-		for (int i = 0; i < sheet.getPhysicalNumberOfRows(); i++)  {
+		int rowCount = getLastRowIndex() + 1;
+		for (int i = 0; i < rowCount; i++)  {
 			ExcelCell c = cellAt(index, i);
 			res.add(c);
 			if (!c.isEmpty())
@@ -201,6 +231,84 @@ public class ExcelSheet {
 		return column;
 	}
 	
+	/**
+	 * Receives rows of a sheet visited by {@link ExcelSheet#visitRows(RowVisitor)}
+	 */
+	public interface RowVisitor {
+		/**
+		 * Called for every existing row of the sheet, in ascending order of row indexes
+		 * @param row Row with all existing cells (including empty ones)
+		 */
+		void visit(ExcelRow row);
+	}
+	
+	/**
+	 * Visits all existing rows of the sheet in ascending order. Unlike {@link #snapshot()}, a read-only
+	 * sheet does not keep the visited rows in memory, so the whole sheet can be copied row by row.
+	 * @param visitor Visitor receiving the rows
+	 */
+	public void visitRows(RowVisitor visitor)  {
+		if (sheet == null)
+			return;
+		
+		Iterator<Row> rows = sheet.rowIterator();
+		while (rows.hasNext())  {
+			Row row = rows.next();
+			ExcelRow res = new ExcelRow(row.getRowNum());
+			fillRawRow(row, res);
+			visitor.visit(res);
+		}
+	}
+	
+	/**
+	 * Copies the cell values of the whole sheet into an immutable snapshot. Only existing rows
+	 * and cells are visited. Formula cells get their cached value, like in a read-only workbook.
+	 * The snapshot can be read from any thread without accessing the workbook.
+	 * @return Snapshot of the sheet
+	 */
+	public ExcelSheetSnapshot snapshot()  {
+		ExcelSheetSnapshot.Builder builder = new ExcelSheetSnapshot.Builder(getName());
+		if (sheet == null)
+			return builder.build();
+		
+		Iterator<Row> rows = sheet.rowIterator();
+		while (rows.hasNext())  {
+			Row row = rows.next();
+			Iterator<Cell> cells = row.cellIterator();
+			while (cells.hasNext())  {
+				Cell c = cells.next();
+				switch (valueType(c))  {
+				case Cell.CELL_TYPE_STRING:
+					builder.set(c.getColumnIndex(), c.getRowIndex(), Cell.CELL_TYPE_STRING, c.getStringCellValue(), 0);
+				break;
+				case Cell.CELL_TYPE_NUMERIC:
+					builder.set(c.getColumnIndex(), c.getRowIndex(), Cell.CELL_TYPE_NUMERIC, null, c.getNumericCellValue());
+				break;
+				case Cell.CELL_TYPE_BOOLEAN:
+					builder.set(c.getColumnIndex(), c.getRowIndex(), Cell.CELL_TYPE_BOOLEAN, null, c.getBooleanCellValue() ? 1 : 0);
+				break;
+				default:
+					builder.set(c.getColumnIndex(), c.getRowIndex(), valueType(c), null, 0);
+				}
+			}
+		}
+		return builder.build();
+	}
+	
+	/**
+	 * Type of the value of the cell, for formula cells the type of the cached result.
+	 * Formulas without a cached value stay {@link Cell#CELL_TYPE_FORMULA}, see {@link SheetXMLHandler}.
+	 * @param c POI cell
+	 * @return One of the Cell.CELL_TYPE_* constants
+	 */
+	private static int valueType(Cell c)  {
+		if (c.getCellType() != Cell.CELL_TYPE_FORMULA)
+			return c.getCellType();
+		if (c instanceof XSSFCell && ((XSSFCell) c).getRawValue() == null)
+			return Cell.CELL_TYPE_FORMULA;
+		return c.getCachedFormulaResultType();
+	}
+	
 	/**
 	 * Gets sheet name
 	 * @return Sheet name
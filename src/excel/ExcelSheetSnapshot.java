@@ -0,0 +1,322 @@
+package excel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.poi.ss.usermodel.Cell;
+
+/**
+ * @author KarelPetranek
+ * Immutable copy of the cell values of one sheet, stored in a dense table, or row by row when the table
+ * would be mostly empty. Reading a snapshot doesn't touch the workbook anymore, so it can be shared between threads.
+ * @see ExcelSheet#snapshot()
+ */
+public final class ExcelSheetSnapshot {
+	/**
+	 * Type of a cell that doesn't exist in the sheet
+	 */
+	static final byte CELL_MISSING = -1;
+	
+	/**
+	 * Snapshots with fewer cells are always stored in a dense table
+	 */
+	private static final int MIN_SPARSE_CELLS = 1 << 16;
+	
+	private final String name;
+	private final int rowCount;
+	private final int columnCount;
+	
+	// Row-major tables of rowCount * columnCount cells, null when the rows are stored separately
+	private final byte[] types;
+	private final String[] strings;
+	private final double[] numbers;
+	
+	// Values of each row, null when the table is dense
+	private final RowValues[] rows;
+	
+	private static class RowValues  {
+		byte[] types = new byte[0];
+		String[] strings = new String[0];
+		double[] numbers = new double[0];
+		int size = 0;
+		
+		void ensureSize(int size)  {
+			this.size = Math.max(this.size, size);
+			if (types.length >= size)
+				return;
+			size = Math.max(size, types.length * 2);
+			int oldSize = types.length;
+			types = Arrays.copyOf(types, size);
+			Arrays.fill(types, oldSize, size, CELL_MISSING);
+			strings = Arrays.copyOf(strings, size);
+			numbers = Arrays.copyOf(numbers, size);
+		}
+		
+		void trim()  {
+			if (types.length == size)
+				return;
+			types = Arrays.copyOf(types, size);
+			strings = Arrays.copyOf(strings, size);
+			numbers = Arrays.copyOf(numbers, size);
+		}
+	}
+	
+	/**
+	 * Collects cell values in any order and builds the snapshot. Blank cells are not kept, they read
+	 * as missing cells, so formatted but empty cells don't extend the size of the snapshot.
+	 */
+	static class Builder  {
+		private String name;
+		private List<RowValues> rows = new ArrayList<RowValues>();
+		private int columnCount = 0;
+		private long cellCount = 0;
+		
+		/**
+		 * Creates a builder of a snapshot of the given sheet
+		 * @param name Sheet name
+		 */
+		Builder(String name)  {
+			this.name = name;
+		}
+		
+		/**
+		 * Sets value of a cell
+		 * @param x Column
+		 * @param y Row
+		 * @param type One of the Cell.CELL_TYPE_* constants
+		 * @param text String value (used for string cells)
+		 * @param number Numeric value (used for numeric and boolean cells)
+		 */
+		void set(int x, int y, int type, String text, double number)  {
+			if (type == Cell.CELL_TYPE_BLANK)
+				return;
+			while (rows.size() <= y)
+				rows.add(null);
+			RowValues row = rows.get(y);
+			if (row == null)  {
+				row = new RowValues();
+				rows.set(y, row);
+			}
+			cellCount -= row.size;
+			row.ensureSize(x + 1);
+			cellCount += row.size;
+			row.types[x] = (byte)type;
+			row.strings[x] = text;
+			row.numbers[x] = number;
+			columnCount = Math.max(columnCount, x + 1);
+		}
+		
+		/**
+		 * @return The built snapshot
+		 */
+		ExcelSheetSnapshot build()  {
+			return new ExcelSheetSnapshot(this);
+		}
+	}
+	
+	private ExcelSheetSnapshot(Builder builder)  {
+		name = builder.name;
+		rowCount = builder.rows.size();
+		columnCount = builder.columnCount;
+		
+		long size = (long)rowCount * columnCount;
+		if (size > Integer.MAX_VALUE || (size >= MIN_SPARSE_CELLS && builder.cellCount * 2 < size))  {
+			types = null;
+			strings = null;
+			numbers = null;
+			rows = builder.rows.toArray(new RowValues[rowCount]);
+			for (RowValues row : rows)  {
+				if (row != null)
+					row.trim();
+			}
+			return;
+		}
+		
+		rows = null;
+		types = new byte[(int)size];
+		strings = new String[(int)size];
+		numbers = new double[(int)size];
+		Arrays.fill(types, CELL_MISSING);
+		
+		for (int y = 0; y < rowCount; y++)  {
+			RowValues row = builder.rows.get(y);
+			if (row == null)
+				continue;
+			System.arraycopy(row.types, 0, types, y * columnCount, row.size);
+			System.arraycopy(row.strings, 0, strings, y * columnCount, row.size);
+			System.arraycopy(row.numbers, 0, numbers, y * columnCount, row.size);
+		}
+	}
+	
+	/**
+	 * Gets name of the sheet
+	 * @return Sheet name
+	 */
+	public String getName()  {
+		return name;
+	}
+	
+	/**
+	 * Number of rows including missing rows in between, i.e. index of the last row with a non-blank cell + 1
+	 * @return Row count
+	 */
+	public int getRowCount()  {
+		return rowCount;
+	}
+	
+	/**
+	 * Number of columns, i.e. index of the last column with a non-blank cell + 1
+	 * @return Column count
+	 */
+	public int getColumnCount()  {
+		return columnCount;
+	}
+	
+	private byte typeAt(int x, int y)  {
+		if (x < 0 || y < 0 || x >= columnCount || y >= rowCount)
+			return CELL_MISSING;
+		if (rows == null)
+			return types[y * columnCount + x];
+		RowValues row = rows[y];
+		return row == null || x >= row.size ? CELL_MISSING : row.types[x];
+	}
+	
+	// Only for existing cells, see typeAt
+	private String textAt(int x, int y)  {
+		return rows == null ? strings[y * columnCount + x] : rows[y].strings[x];
+	}
+	
+	// Only for existing cells, see typeAt
+	private double valueAt(int x, int y)  {
+		return rows == null ? numbers[y * columnCount + x] : rows[y].numbers[x];
+	}
+	
+	/**
+	 * Returns true if the sheet contains a cell (even a blank one) at the given coordinates
+	 * @param x Column
+	 * @param y Row
+	 * @return True if the cell exists
+	 */
+	boolean exists(int x, int y)  {
+		return typeAt(x, y) != CELL_MISSING;
+	}
+	
+	/**
+	 * Returns true if the cell at the given coordinates is blank or doesn't exist
+	 * @param x Column
+	 * @param y Row
+	 * @return True if the cell is empty
+	 */
+	public boolean isEmptyAt(int x, int y)  {
+		byte type = typeAt(x, y);
+		return type == CELL_MISSING || type == Cell.CELL_TYPE_BLANK;
+	}
+	
+	/**
+	 * Returns true if the cell at the given coordinates holds a number
+	 * @param x Column
+	 * @param y Row
+	 * @return True if the cell is numeric
+	 */
+	public boolean isNumericAt(int x, int y)  {
+		return typeAt(x, y) == Cell.CELL_TYPE_NUMERIC;
+	}
+	
+	/**
+	 * String value of the cell at the given coordinates, converted the same way as {@link ExcelCell#asString()}.
+	 * Never returns null.
+	 * @param x Column
+	 * @param y Row
+	 * @return String representation of the given cell
+	 */
+	public String stringAt(int x, int y)  {
+		switch (typeAt(x, y))  {
+		case Cell.CELL_TYPE_BOOLEAN:
+			return Boolean.toString(valueAt(x, y) != 0);
+		case Cell.CELL_TYPE_NUMERIC:
+			return Double.toString(valueAt(x, y));
+		case Cell.CELL_TYPE_STRING:
+			return textAt(x, y);
+		}
+		return "";
+	}
+	
+	/**
+	 * Numeric value of the cell at the given coordinates, converted the same way as {@link ExcelCell#asNumber()}
+	 * @param x Column
+	 * @param y Row
+	 * @return Numeric representation of the given cell
+	 */
+	public double numberAt(int x, int y)  {
+		return cellAt(x, y).asNumber();
+	}
+	
+	/**
+	 * Returns a read-only cell at the given coordinates
+	 * @param x Column
+	 * @param y Row
+	 * @return Cell at the given coordinates, an empty cell if there is no cell
+	 */
+	public ExcelCell cellAt(int x, int y)  {
+		byte type = typeAt(x, y);
+		if (type == CELL_MISSING)
+			return new ExcelCell();
+		return new ExcelCell(x, y, type, textAt(x, y), valueAt(x, y));
+	}
+	
+	/**
+	 * Returns row at the given index. The row contains cells from the first column to the last non-blank cell,
+	 * so the position of a cell in the row is its column index.
+	 * @param index Index of the row
+	 * @return Row at the given index
+	 */
+	public ExcelRow getRow(int index)  {
+		int last = -1;
+		for (int x = 0; x < columnCount; x++)  {
+			if (!isEmptyAt(x, index))
+				last = x;
+		}
+		
+		ExcelRow res = new ExcelRow(index, last + 1);
+		for (int x = 0; x <= last; x++)
+			res.add(cellAt(x, index));
+		return res;
+	}
+	
+	/**
+	 * Returns column at the given index. The column contains cells from the first row to the last non-blank cell,
+	 * so the position of a cell in the column is its row index.
+	 * @param index Column index
+	 * @return Column at the given index
+	 */
+	public ExcelColumn getColumn(int index)  {
+		int last = -1;
+		for (int y = 0; y < rowCount; y++)  {
+			if (!isEmptyAt(index, y))
+				last = y;
+		}
+		return column(index, last + 1);
+	}
+	
+	/**
+	 * Returns column at the given index. The column contains cells of all rows of the sheet (including empty cells).
+	 * @param index Column index
+	 * @return Column at the given index
+	 */
+	public ExcelColumn getColumnWithEmptyCells(int index)  {
+		return column(index, rowCount);
+	}
+	
+	private ExcelColumn column(int index, int size)  {
+		ExcelColumn res = new ExcelColumn(index, size);
+		for (int y = 0; y < size; y++)
+			res.add(cellAt(index, y));
+		return res;
+	}
+	
+	@Override
+	public String toString()  {
+		return name;
+	}
+}
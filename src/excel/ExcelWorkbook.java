@@ -9,12 +9,20 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.regex.Pattern;
+
+import javax.xml.parsers.SAXParserFactory;
 
 import org.apache.poi.hssf.util.HSSFColor;
+import org.apache.poi.openxml4j.opc.OPCPackage;
+import org.apache.poi.openxml4j.opc.PackageAccess;
 import org.apache.poi.ss.usermodel.CellStyle;
 import org.apache.poi.ss.usermodel.Font;
 import org.apache.poi.ss.usermodel.Sheet;
 import org.apache.poi.ss.usermodel.Workbook;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.apache.poi.xssf.usermodel.XSSFWorkbook;
 
 /**
@@ -25,6 +33,13 @@ public class ExcelWorkbook {
 	private Workbook workbook;
 	private HashMap<String, CellStyle> fontRegister = new HashMap<String, CellStyle>();
 	
+	// Read-only mode: the package is read through the XSSF event model instead of the DOM
+	private OPCPackage readOnlyPackage;
+	private List<ExcelSheet> readOnlySheets;
+	
+	private ExcelWorkbook()  {
+	}
+	
 	/**
 	 * Loads an Excel workbook from the given input stream
 	 * @param is Input stream to load from
@@ -45,6 +60,98 @@ public class ExcelWorkbook {
 		is.close();
 	}
 	
+	/**
+	 * Opens an Excel workbook for reading only. Instead of building the whole workbook model in memory,
+	 * each sheet is streamed through a SAX parser when it is first accessed and only its cell values are kept.
+	 * Styles, fonts and writing are not available on such workbook. Call {@link #close()} when done.
+	 * @param filePath Path to the Excel file
+	 * @return Read-only workbook
+	 * @throws IOException when the file cannot be loaded
+	 */
+	public static ExcelWorkbook openReadOnly(String filePath) throws IOException  {
+		return openReadOnly(filePath, (Pattern[]) null);
+	}
+	
+	/**
+	 * Opens an Excel workbook for reading only, like {@link #openReadOnly(String)}, with only the sheets
+	 * whose names match one of the given patterns. The list of sheets is read from the workbook part,
+	 * other sheets are left out of the workbook and their parts are never inflated.
+	 * @param filePath Path to the Excel file
+	 * @param sheetPatterns Patterns of the names of the sheets to load, null to load all sheets
+	 * @return Read-only workbook
+	 * @throws IOException when the file cannot be loaded
+	 */
+	public static ExcelWorkbook openReadOnly(String filePath, Pattern... sheetPatterns) throws IOException  {
+		ExcelWorkbook result = new ExcelWorkbook();
+		try {
+			result.readOnlyPackage = OPCPackage.open(filePath, PackageAccess.READ);
+			XSSFReader reader = new XSSFReader(result.readOnlyPackage);
+			ReadOnlySharedStringsTable strings = new ReadOnlySharedStringsTable(result.readOnlyPackage);
+			
+			SAXParserFactory factory = SAXParserFactory.newInstance();
+			factory.setNamespaceAware(true);
+			WorkbookXMLHandler handler = new WorkbookXMLHandler();
+			InputStream is = reader.getWorkbookData();
+			try {
+				factory.newSAXParser().parse(is, handler);
+			} finally {
+				is.close();
+			}
+			
+			result.readOnlySheets = new ArrayList<ExcelSheet>(handler.getSheets().size());
+			for (WorkbookXMLHandler.SheetEntry e : handler.getSheets())  {
+				if (sheetPatterns == null || matchesAny(e.name, sheetPatterns))
+					result.readOnlySheets.add(new ReadOnlyExcelSheet(reader, strings, e.relationId, e.name, e.hidden));
+			}
+		} catch (IOException e) {
+			result.close();
+			throw e;
+		} catch (Exception e) {
+			result.close();
+			throw new IOException("Cannot open workbook " + filePath, e);
+		}
+		return result;
+	}
+	
+	private static boolean matchesAny(String name, Pattern[] patterns)  {
+		for (Pattern p : patterns)  {
+			if (p.matcher(name).matches())
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Creates a new empty workbook for streamed writing. Only the last windowSize rows of each sheet
+	 * are kept in memory, older rows are flushed to temporary files and cannot be accessed anymore,
+	 * so rows have to be written in ascending order.
+	 * @param windowSize Number of rows kept in memory per sheet
+	 * @return Empty streaming workbook
+	 */
+	public static ExcelWorkbook createStreaming(int windowSize)  {
+		ExcelWorkbook result = new ExcelWorkbook();
+		result.workbook = new SXSSFWorkbook(windowSize);
+		return result;
+	}
+	
+	/**
+	 * Returns true if the workbook was opened by {@link #openReadOnly(String)}
+	 * @return True if the workbook is read-only
+	 */
+	public boolean isReadOnly()  {
+		return readOnlySheets != null;
+	}
+	
+	/**
+	 * Releases the underlying file of a read-only workbook. Does nothing for ordinary workbooks.
+	 */
+	public void close()  {
+		if (readOnlyPackage != null)  {
+			readOnlyPackage.revert();
+			readOnlyPackage = null;
+		}
+	}
+	
 	/**
 	 * Creates and register font for current workbook
 	 * @param colorIndex {@link HSSFColor} index
@@ -55,6 +162,7 @@ public class ExcelWorkbook {
 	 * 
 	 */
 	public void registrFont(short colorIndex, boolean bold, boolean italic, boolean underline, String FontID) {
+		checkWritable();
 		CellStyle style = workbook.createCellStyle();
 		Font font = workbook.createFont();
 		font.setColor(colorIndex);
@@ -85,6 +193,7 @@ public class ExcelWorkbook {
 	 * @throws IOException when the output stream cannot be written
 	 */
 	public void write(OutputStream os) throws IOException  {
+		checkWritable();
 		workbook.write(os);
 	}
 	
@@ -104,6 +213,9 @@ public class ExcelWorkbook {
 	 * @return List of all sheets
 	 */
 	public List<ExcelSheet> getSheets()  {
+		if (isReadOnly())
+			return new ArrayList<ExcelSheet>(readOnlySheets);
+		
 		List<ExcelSheet> result = new ArrayList<ExcelSheet>(workbook.getNumberOfSheets());
 		for (int i = 0; i < workbook.getNumberOfSheets(); i++)  {
 			result.add(new ExcelSheet(workbook.getSheetAt(i)));
@@ -117,15 +229,43 @@ public class ExcelWorkbook {
 	 * @return List of all matching workbooks, an empty list when no matches were found
 	 */
 	public List<ExcelSheet> getSheetsByPattern(String regex)  {
+		return getSheetsByPattern(Pattern.compile(regex));
+	}
+	
+	/**
+	 * Gets all sheets in the workbook whose name matches the given compiled pattern
+	 * @param pattern The pattern to match
+	 * @return List of all matching workbooks, an empty list when no matches were found
+	 */
+	public List<ExcelSheet> getSheetsByPattern(Pattern pattern)  {
+		if (isReadOnly())  {
+			List<ExcelSheet> result = new ArrayList<ExcelSheet>(readOnlySheets.size());
+			for (ExcelSheet s : readOnlySheets)  {
+				if (pattern.matcher(s.getName()).matches())
+					result.add(s);
+			}
+			return result;
+		}
+		
 		List<ExcelSheet> result = new ArrayList<ExcelSheet>(workbook.getNumberOfSheets());
 		for (int i = 0; i < workbook.getNumberOfSheets(); i++)  {
 			Sheet s = workbook.getSheetAt(i);
-			if (s.getSheetName().matches(regex))
+			if (pattern.matcher(s.getSheetName()).matches())
 				result.add(new ExcelSheet(s));
 		}
 		return result;		
 	}
 	
+	/**
+	 * Creates a new sheet with the given name at the end of the workbook
+	 * @param name Sheet name
+	 * @return The created sheet
+	 */
+	public ExcelSheet createSheet(String name)  {
+		checkWritable();
+		return new ExcelSheet(workbook.createSheet(name));
+	}
+	
 	/**
 	 * Returns an Excel sheet based on its name. If the sheet with the given name doesn't
 	 * exist, the returned sheet is invalid (not null, so you can still work with the instance).
@@ -134,6 +274,18 @@ public class ExcelWorkbook {
 	 * @see ExcelSheet
 	 */
 	public ExcelSheet getSheetByName(String name)  {
+		if (isReadOnly())  {
+			for (ExcelSheet s : readOnlySheets)  {
+				if (s.getName().equalsIgnoreCase(name))
+					return s;
+			}
+			return new ExcelSheet(null);
+		}
 		return new ExcelSheet(workbook.getSheet(name));
 	}
+	
+	private void checkWritable()  {
+		if (isReadOnly())
+			throw new UnsupportedOperationException("The workbook is opened as read-only");
+	}
 }
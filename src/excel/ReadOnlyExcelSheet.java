@@ -0,0 +1,148 @@
+package excel;
+
+import java.io.InputStream;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.apache.poi.xssf.eventusermodel.XSSFReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * @author KarelPetranek
+ * Sheet of a read-only workbook. The sheet XML is streamed through a SAX parser the first time
+ * the sheet is accessed and only a snapshot of the cell values is kept in memory.
+ * {@link #visitRows(RowVisitor)} streams the rows without taking the snapshot.
+ * @see ExcelWorkbook#openReadOnly(String)
+ */
+class ReadOnlyExcelSheet extends ExcelSheet {
+	private XSSFReader reader;
+	private ReadOnlySharedStringsTable strings;
+	private String relationId;
+	private String name;
+	private boolean hidden;
+	
+	private ExcelSheetSnapshot snapshot;
+	
+	/**
+	 * Creates a sheet that will be read from the given workbook part
+	 * @param reader Reader of the workbook package
+	 * @param strings Shared strings of the workbook
+	 * @param relationId Relationship ID of the sheet part
+	 * @param name Sheet name
+	 * @param hidden True if the sheet is hidden
+	 */
+	ReadOnlyExcelSheet(XSSFReader reader, ReadOnlySharedStringsTable strings, String relationId, String name, boolean hidden)  {
+		super(null);
+		this.reader = reader;
+		this.strings = strings;
+		this.relationId = relationId;
+		this.name = name;
+		this.hidden = hidden;
+	}
+	
+	@Override
+	public synchronized ExcelSheetSnapshot snapshot()  {
+		if (snapshot == null)  {
+			SheetXMLHandler handler = new SheetXMLHandler(strings, name);
+			parse(handler);
+			snapshot = handler.getSnapshot();
+		}
+		return snapshot;
+	}
+	
+	/**
+	 * Visits the rows of the sheet. When no snapshot has been taken yet, the rows are streamed
+	 * from the sheet XML and are not kept in memory.
+	 */
+	@Override
+	public void visitRows(RowVisitor visitor)  {
+		ExcelSheetSnapshot s;
+		synchronized (this)  {
+			s = snapshot;
+		}
+		if (s == null)  {
+			parse(new SheetXMLHandler(strings, visitor));
+			return;
+		}
+		for (int y = 0; y < s.getRowCount(); y++)
+			visitor.visit(getRowWithEmptyCells(y));
+	}
+	
+	/**
+	 * Streams the sheet part through the given SAX handler
+	 * @param handler Handler of the sheet XML
+	 */
+	private void parse(DefaultHandler handler)  {
+		try {
+			InputStream is = reader.getSheet(relationId);
+			try {
+				SAXParserFactory factory = SAXParserFactory.newInstance();
+				factory.setNamespaceAware(true);
+				factory.newSAXParser().parse(is, handler);
+			} finally {
+				is.close();
+			}
+		} catch (Exception e) {
+			throw new IllegalStateException("Cannot read sheet " + name, e);
+		}
+	}
+	
+	@Override
+	public ExcelCell cellAt(int x, int y)  {
+		return snapshot().cellAt(x, y);
+	}
+	
+	@Override
+	public ExcelRow getRow(int index)  {
+		ExcelRow res = getRowWithEmptyCells(index);
+		int lastNonEmptyCell = -1;
+		for (int i = 0; i < res.size(); i++)  {
+			if (!res.get(i).isEmpty())
+				lastNonEmptyCell = i;
+		}
+		res.removeRange(lastNonEmptyCell + 1, res.size());
+		return res;
+	}
+	
+	@Override
+	public ExcelRow getRowWithEmptyCells(int index)  {
+		ExcelSheetSnapshot s = snapshot();
+		ExcelRow res = new ExcelRow(index);
+		for (int x = 0; x < s.getColumnCount(); x++)  {
+			if (s.exists(x, index))
+				res.add(s.cellAt(x, index));
+		}
+		return res;
+	}
+	
+	@Override
+	public ExcelRow createRow(int index, int minCapacity, int leftOffset)  {
+		throw new UnsupportedOperationException("Cannot create rows in a read-only workbook");
+	}
+	
+	@Override
+	public ExcelCell createCell(int x, int y)  {
+		throw new UnsupportedOperationException("Cannot create cells in a read-only workbook");
+	}
+	
+	@Override
+	public int getLastRowIndex()  {
+		return snapshot().getRowCount() - 1;
+	}
+	
+	@Override
+	public String getName()  {
+		return name;
+	}
+	
+	@Override
+	public boolean isValid()  {
+		return true;
+	}
+	
+	@Override
+	public boolean isHidden()  {
+		return hidden;
+	}
+}
@@ -0,0 +1,137 @@
+package excel;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.xssf.eventusermodel.ReadOnlySharedStringsTable;
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * @author KarelPetranek
+ * SAX handler reading the cell values of one sheet part (sheetN.xml) into a snapshot, or passing
+ * them row by row to a visitor. Only values are kept, formatting and the rest of the sheet XML are skipped.
+ * Formula cells get their cached value.
+ */
+class SheetXMLHandler extends DefaultHandler {
+	private ReadOnlySharedStringsTable strings;
+	
+	private ExcelSheetSnapshot.Builder builder;
+	private ExcelSheet.RowVisitor visitor;
+	private ExcelRow row;
+	private int rowIndex = -1;
+	
+	private int cellX = -1;
+	private String cellType;
+	private boolean hasFormula;
+	private boolean readingValue;
+	private StringBuilder value = new StringBuilder();
+	
+	/**
+	 * Creates a handler resolving shared strings from the given table
+	 * @param strings Shared strings table of the workbook
+	 * @param name Name of the sheet
+	 */
+	public SheetXMLHandler(ReadOnlySharedStringsTable strings, String name)  {
+		this.strings = strings;
+		this.builder = new ExcelSheetSnapshot.Builder(name);
+	}
+	
+	/**
+	 * Creates a handler passing the rows to the given visitor, no snapshot is built
+	 * @param strings Shared strings table of the workbook
+	 * @param visitor Visitor receiving the rows
+	 */
+	public SheetXMLHandler(ReadOnlySharedStringsTable strings, ExcelSheet.RowVisitor visitor)  {
+		this.strings = strings;
+		this.visitor = visitor;
+	}
+	
+	/**
+	 * Snapshot of the values read from the sheet
+	 * @return Sheet snapshot
+	 */
+	public ExcelSheetSnapshot getSnapshot()  {
+		return builder.build();
+	}
+	
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes)  {
+		if ("row".equals(localName))  {
+			String r = attributes.getValue("r");
+			rowIndex = r == null ? rowIndex + 1 : Integer.parseInt(r) - 1;
+			if (visitor != null)
+				row = new ExcelRow(rowIndex);
+			cellX = -1;
+		} else if ("c".equals(localName))  {
+			String r = attributes.getValue("r");
+			cellX = r == null ? cellX + 1 : columnIndex(r);
+			cellType = attributes.getValue("t");
+			hasFormula = false;
+			value.setLength(0);
+		} else if ("v".equals(localName) || "t".equals(localName))  {
+			readingValue = true;
+		} else if ("f".equals(localName))  {
+			hasFormula = true;
+		}
+	}
+	
+	@Override
+	public void endElement(String uri, String localName, String qName)  {
+		if ("v".equals(localName) || "t".equals(localName))  {
+			readingValue = false;
+		} else if ("c".equals(localName))  {
+			addCell();
+		} else if ("row".equals(localName) && visitor != null)  {
+			visitor.visit(row);
+			row = null;
+		}
+	}
+	
+	@Override
+	public void characters(char[] ch, int start, int length)  {
+		if (readingValue)
+			value.append(ch, start, length);
+	}
+	
+	private void addCell()  {
+		String v = value.toString();
+		// Formula cells take the type of their cached value, the formula itself is not evaluated
+		if (hasFormula && v.isEmpty())
+			setCell(Cell.CELL_TYPE_FORMULA, null, 0);
+		else if (cellType == null || cellType.equals("n"))  {
+			if (v.isEmpty())
+				setCell(Cell.CELL_TYPE_BLANK, null, 0);
+			else
+				setCell(Cell.CELL_TYPE_NUMERIC, null, Double.parseDouble(v));
+		} else if (cellType.equals("s"))
+			setCell(Cell.CELL_TYPE_STRING, strings.getEntryAt(Integer.parseInt(v)), 0);
+		else if (cellType.equals("inlineStr") || cellType.equals("str"))
+			setCell(Cell.CELL_TYPE_STRING, v, 0);
+		else if (cellType.equals("b"))
+			setCell(Cell.CELL_TYPE_BOOLEAN, null, v.equals("1") ? 1 : 0);
+		else
+			setCell(Cell.CELL_TYPE_ERROR, null, 0);
+	}
+	
+	private void setCell(int type, String text, double number)  {
+		if (visitor != null)
+			row.add(new ExcelCell(cellX, rowIndex, type, text, number));
+		else
+			builder.set(cellX, rowIndex, type, text, number);
+	}
+	
+	/**
+	 * Converts a cell reference (such as "AB12") to a zero-based column index
+	 * @param ref Cell reference
+	 * @return Column index
+	 */
+	static int columnIndex(String ref)  {
+		int col = 0;
+		for (int i = 0; i < ref.length(); i++)  {
+			char ch = ref.charAt(i);
+			if (ch < 'A' || ch > 'Z')
+				break;
+			col = col * 26 + (ch - 'A' + 1);
+		}
+		return col - 1;
+	}
+}
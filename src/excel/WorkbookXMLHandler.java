@@ -0,0 +1,46 @@
+package excel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * @author KarelPetranek
+ * SAX handler reading the list of sheets from the workbook part (workbook.xml)
+ */
+class WorkbookXMLHandler extends DefaultHandler {
+	private static final String RELATIONSHIPS_NS = "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+	
+	/**
+	 * Sheet entry of the workbook part
+	 */
+	static class SheetEntry  {
+		String name;
+		String relationId;
+		boolean hidden;
+	}
+	
+	private List<SheetEntry> sheets = new ArrayList<SheetEntry>();
+	
+	/**
+	 * Sheets in the workbook order
+	 * @return List of sheet entries
+	 */
+	public List<SheetEntry> getSheets()  {
+		return sheets;
+	}
+	
+	@Override
+	public void startElement(String uri, String localName, String qName, Attributes attributes)  {
+		if ("sheet".equals(localName))  {
+			SheetEntry e = new SheetEntry();
+			e.name = attributes.getValue("name");
+			e.relationId = attributes.getValue(RELATIONSHIPS_NS, "id");
+			String state = attributes.getValue("state");
+			e.hidden = state != null && !state.equals("visible");
+			sheets.add(e);
+		}
+	}
+}
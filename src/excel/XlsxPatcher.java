@@ -0,0 +1,786 @@
+package excel;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * @author KarelPetranek
+ * Writes a copy of a workbook (.xlsx) with some rows replaced, without loading the workbook. Parts of the
+ * package that are not changed are copied byte for byte in their compressed form. Only the sheets with
+ * replaced rows, and the styles part when cell styles are added, are inflated, rewritten on the fly
+ * and compressed again. The dimension of a patched sheet is extended to the replaced rows and replaced rows
+ * keep the attributes of the original row (such as its height). The calculation chain is dropped when rows
+ * are replaced, as it may refer to formula cells that no longer exist; Excel rebuilds it on load.
+ * Zip64 packages are not supported.
+ */
+public class XlsxPatcher {
+	private static final int LOCAL_HEADER_SIGNATURE = 0x04034b50;
+	private static final int DATA_DESCRIPTOR_SIGNATURE = 0x08074b50;
+	private static final int CENTRAL_HEADER_SIGNATURE = 0x02014b50;
+	private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+	private static final int LOCAL_HEADER_SIZE = 30;
+	private static final int CENTRAL_HEADER_SIZE = 46;
+	private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+	private static final int MAX_COMMENT_SIZE = 0xffff;
+	private static final int FLAG_DATA_DESCRIPTOR = 0x0008;
+	private static final int FLAG_UTF8 = 0x0800;
+	private static final int METHOD_STORED = 0;
+	private static final int METHOD_DEFLATED = 8;
+
+	private static final String RELATIONSHIP_TYPE_OFFICE_DOCUMENT = "/officeDocument";
+	private static final String RELATIONSHIP_TYPE_STYLES = "/styles";
+	private static final String RELATIONSHIP_TYPE_CALC_CHAIN = "/calcChain";
+	private static final String CONTENT_TYPES_PART = "[Content_Types].xml";
+	private static final String DEFAULT_FONT = "<sz val=\"11\"/><color indexed=\"%d\"/><name val=\"Calibri\"/><family val=\"2\"/>";
+
+	/**
+	 * Entry of the zip central directory
+	 */
+	private static class Entry  {
+		String name;
+		byte[] centralHeader;
+		int flags;
+		int method;
+		long compressedSize;
+		long localHeaderOffset;
+	}
+
+	/**
+	 * Replacement of one row
+	 */
+	private static class RowPatch  {
+		int rowIndex;
+		int firstColumn;
+		double[] values;
+		int[] styles;
+	}
+
+	private final String filePath;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final Map<String, Entry> entries = new LinkedHashMap<String, Entry>();
+	private byte[] comment;
+
+	private final Map<String, String> sheetParts = new HashMap<String, String>();
+	private String stylesPart;
+	private String calcChainPart;
+	private String workbookRelationshipsPart;
+
+	// Patches of the sheet parts, rows in ascending order
+	private final Map<String, TreeMap<Integer, RowPatch>> patches = new HashMap<String, TreeMap<Integer, RowPatch>>();
+
+	// Styles part is read only when cell styles are added
+	private String styles;
+	private int fontCount;
+	private int cellStyleCount;
+	private final List<Integer> addedFontColors = new ArrayList<Integer>();
+
+	/**
+	 * Opens a workbook for patching, reads its zip directory and the list of its sheets.
+	 * Call {@link #close()} when done.
+	 * @param filePath Path to the Excel file
+	 * @throws IOException when the file cannot be read or is not a supported workbook
+	 */
+	public XlsxPatcher(String filePath) throws IOException  {
+		this.filePath = filePath;
+		file = new RandomAccessFile(filePath, "r");
+		channel = file.getChannel();
+		try {
+			readCentralDirectory();
+			readSheetParts();
+		} catch (IOException e) {
+			close();
+			throw e;
+		} catch (Exception e) {
+			close();
+			throw new IOException("Cannot open workbook " + filePath, e);
+		}
+	}
+
+	/**
+	 * Adds a cell style with a font of the given color, like {@link ExcelWorkbook#registrFont(short, boolean, boolean, boolean, String)}
+	 * @param colorIndex Index of the font color
+	 * @return Index of the cell style for {@link #replaceRow(String, int, int, double[], int[])}
+	 * @throws IOException when the styles part cannot be read
+	 */
+	public int addFontStyle(short colorIndex) throws IOException  {
+		if (styles == null)
+			readStyles();
+		addedFontColors.add((int) colorIndex);
+		return cellStyleCount + addedFontColors.size() - 1;
+	}
+
+	/**
+	 * Replaces a row of a sheet with numeric cells. The original row, if any, is dropped with all its cells,
+	 * like a row created by {@link ExcelSheet#createRow(int, int, int)}.
+	 * @param sheetName Sheet name
+	 * @param rowIndex Row index, zero based
+	 * @param firstColumn Column of the first value, zero based
+	 * @param values Cell values
+	 * @param styles Cell style of each value, see {@link #addFontStyle(short)}
+	 * @throws IllegalArgumentException when the workbook has no such sheet
+	 */
+	public void replaceRow(String sheetName, int rowIndex, int firstColumn, double[] values, int[] styles) throws IllegalArgumentException  {
+		String part = sheetParts.get(sheetName);
+		if (part == null || !entries.containsKey(part))
+			throw new IllegalArgumentException("Workbook " + filePath + " does not contain sheet " + sheetName);
+
+		RowPatch patch = new RowPatch();
+		patch.rowIndex = rowIndex;
+		patch.firstColumn = firstColumn;
+		patch.values = values;
+		patch.styles = styles;
+		TreeMap<Integer, RowPatch> rows = patches.get(part);
+		if (rows == null)  {
+			rows = new TreeMap<Integer, RowPatch>();
+			patches.put(part, rows);
+		}
+		rows.put(rowIndex, patch);
+	}
+
+	/**
+	 * Writes the patched workbook
+	 * @param outputPath Path to the output file, it must differ from the patched file
+	 * @throws IOException when the output cannot be written
+	 */
+	public void write(String outputPath) throws IOException  {
+		if (new File(outputPath).getCanonicalFile().equals(new File(filePath).getCanonicalFile()))
+			throw new IOException("Workbook " + filePath + " cannot be patched in place, choose a different output");
+
+		boolean dropCalcChain = dropsCalcChain();
+		FileOutputStream out = new FileOutputStream(outputPath);
+		try {
+			FileChannel outChannel = out.getChannel();
+			ByteArrayOutputStream centralDirectory = new ByteArrayOutputStream();
+			int entryCount = 0;
+			for (Entry entry : entries.values())  {
+				if (dropCalcChain && entry.name.equals(calcChainPart))
+					continue;
+				long offset = outChannel.position();
+				byte[] centralHeader = entry.centralHeader.clone();
+
+				if (patches.containsKey(entry.name) || (entry.name.equals(stylesPart) && !addedFontColors.isEmpty())
+						|| (dropCalcChain && (entry.name.equals(CONTENT_TYPES_PART) || entry.name.equals(workbookRelationshipsPart))))
+					writeChangedEntry(entry, outChannel, centralHeader);
+				else
+					copyEntry(entry, outChannel);
+
+				ByteBuffer.wrap(centralHeader).order(ByteOrder.LITTLE_ENDIAN).putInt(42, (int) offset);
+				centralDirectory.write(centralHeader);
+				entryCount++;
+			}
+
+			long centralDirectoryOffset = outChannel.position();
+			ByteBuffer end = ByteBuffer.allocate(END_OF_CENTRAL_DIRECTORY_SIZE + comment.length).order(ByteOrder.LITTLE_ENDIAN);
+			end.putInt(END_OF_CENTRAL_DIRECTORY_SIGNATURE).putShort((short) 0).putShort((short) 0);
+			end.putShort((short) entryCount).putShort((short) entryCount);
+			end.putInt(centralDirectory.size()).putInt((int) centralDirectoryOffset);
+			end.putShort((short) comment.length).put(comment);
+			end.flip();
+			writeFully(outChannel, ByteBuffer.wrap(centralDirectory.toByteArray()));
+			writeFully(outChannel, end);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * @return True if the calculation chain part is left out of the output
+	 */
+	private boolean dropsCalcChain()  {
+		return !patches.isEmpty() && calcChainPart != null && entries.containsKey(calcChainPart);
+	}
+
+	/**
+	 * Releases the patched file
+	 */
+	public void close()  {
+		try {
+			file.close();
+		} catch (IOException e) {
+			// Nothing to do, the file was only read
+		}
+	}
+
+	private void readCentralDirectory() throws IOException  {
+		long size = channel.size();
+		int tailSize = (int) Math.min(size, END_OF_CENTRAL_DIRECTORY_SIZE + MAX_COMMENT_SIZE);
+		ByteBuffer tail = read(size - tailSize, tailSize);
+		int end = -1;
+		for (int i = tailSize - END_OF_CENTRAL_DIRECTORY_SIZE; i >= 0 && end < 0; i--)  {
+			if (tail.getInt(i) == END_OF_CENTRAL_DIRECTORY_SIGNATURE)
+				end = i;
+		}
+		if (end < 0)
+			throw new IOException("Workbook " + filePath + " is not a zip package");
+
+		int entryCount = tail.getShort(end + 10) & 0xffff;
+		long directorySize = tail.getInt(end + 12) & 0xffffffffL;
+		long directoryOffset = tail.getInt(end + 16) & 0xffffffffL;
+		comment = new byte[Math.min(tail.getShort(end + 20) & 0xffff, tailSize - end - END_OF_CENTRAL_DIRECTORY_SIZE)];
+		tail.position(end + END_OF_CENTRAL_DIRECTORY_SIZE);
+		tail.get(comment);
+		if (entryCount == 0xffff || directoryOffset == 0xffffffffL)
+			throw new IOException("Zip64 workbook " + filePath + " is not supported");
+
+		ByteBuffer directory = read(directoryOffset, (int) directorySize);
+		int pos = 0;
+		for (int i = 0; i < entryCount; i++)  {
+			if (directory.getInt(pos) != CENTRAL_HEADER_SIGNATURE)
+				throw new IOException("Corrupted zip directory of workbook " + filePath);
+			int nameLength = directory.getShort(pos + 28) & 0xffff;
+			int length = CENTRAL_HEADER_SIZE + nameLength + (directory.getShort(pos + 30) & 0xffff) + (directory.getShort(pos + 32) & 0xffff);
+
+			Entry entry = new Entry();
+			entry.flags = directory.getShort(pos + 8) & 0xffff;
+			entry.method = directory.getShort(pos + 10) & 0xffff;
+			entry.compressedSize = directory.getInt(pos + 20) & 0xffffffffL;
+			entry.localHeaderOffset = directory.getInt(pos + 42) & 0xffffffffL;
+			entry.centralHeader = new byte[length];
+			directory.position(pos);
+			directory.get(entry.centralHeader);
+			entry.name = new String(entry.centralHeader, CENTRAL_HEADER_SIZE, nameLength, "UTF-8");
+			if (entry.compressedSize == 0xffffffffL || entry.localHeaderOffset == 0xffffffffL)
+				throw new IOException("Zip64 workbook " + filePath + " is not supported");
+			entries.put(entry.name, entry);
+			pos += length;
+		}
+	}
+
+	/**
+	 * Resolves parts of the sheets and of the styles from the workbook part and its relationships
+	 */
+	private void readSheetParts() throws Exception  {
+		String workbookPart = null;
+		for (Map.Entry<String, String[]> rel : readRelationships("_rels/.rels").entrySet())  {
+			if (rel.getValue()[0].endsWith(RELATIONSHIP_TYPE_OFFICE_DOCUMENT))
+				workbookPart = resolve("", rel.getValue()[1]);
+		}
+		if (workbookPart == null || !entries.containsKey(workbookPart))
+			throw new IOException("Workbook " + filePath + " has no workbook part");
+
+		String directory = workbookPart.substring(0, workbookPart.lastIndexOf('/') + 1);
+		workbookRelationshipsPart = directory + "_rels/" + workbookPart.substring(directory.length()) + ".rels";
+		Map<String, String[]> rels = readRelationships(workbookRelationshipsPart);
+		for (Map.Entry<String, String[]> rel : rels.entrySet())  {
+			if (rel.getValue()[0].endsWith(RELATIONSHIP_TYPE_STYLES))
+				stylesPart = resolve(directory, rel.getValue()[1]);
+			else if (rel.getValue()[0].endsWith(RELATIONSHIP_TYPE_CALC_CHAIN))
+				calcChainPart = resolve(directory, rel.getValue()[1]);
+		}
+
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		WorkbookXMLHandler handler = new WorkbookXMLHandler();
+		InputStream is = openEntry(entries.get(workbookPart));
+		try {
+			factory.newSAXParser().parse(is, handler);
+		} finally {
+			is.close();
+		}
+		for (WorkbookXMLHandler.SheetEntry e : handler.getSheets())  {
+			String[] rel = rels.get(e.relationId);
+			if (rel != null)
+				sheetParts.put(e.name, resolve(directory, rel[1]));
+		}
+	}
+
+	/**
+	 * Reads a relationships part
+	 * @return Type and target of each relationship by its ID, empty if the part doesn't exist
+	 */
+	private Map<String, String[]> readRelationships(String part) throws Exception  {
+		final Map<String, String[]> result = new HashMap<String, String[]>();
+		Entry entry = entries.get(part);
+		if (entry == null)
+			return result;
+
+		SAXParserFactory factory = SAXParserFactory.newInstance();
+		factory.setNamespaceAware(true);
+		InputStream is = openEntry(entry);
+		try {
+			factory.newSAXParser().parse(is, new DefaultHandler()  {
+				@Override
+				public void startElement(String uri, String localName, String qName, Attributes attributes)  {
+					if ("Relationship".equals(localName))
+						result.put(attributes.getValue("Id"), new String[] { attributes.getValue("Type"), attributes.getValue("Target") });
+				}
+			});
+		} finally {
+			is.close();
+		}
+		return result;
+	}
+
+	/**
+	 * Resolves target of a relationship to a part name
+	 */
+	private static String resolve(String directory, String target)  {
+		String path = target.startsWith("/") ? target.substring(1) : directory + target;
+		List<String> names = new ArrayList<String>();
+		for (String name : path.split("/"))  {
+			if (name.equals(".."))  {
+				if (!names.isEmpty())
+					names.remove(names.size() - 1);
+			} else if (!name.isEmpty() && !name.equals("."))  {
+				names.add(name);
+			}
+		}
+		StringBuilder res = new StringBuilder();
+		for (String name : names)  {
+			if (res.length() > 0)
+				res.append('/');
+			res.append(name);
+		}
+		return res.toString();
+	}
+
+	private void readStyles() throws IOException  {
+		Entry entry = stylesPart == null ? null : entries.get(stylesPart);
+		if (entry == null)
+			throw new IOException("Workbook " + filePath + " has no styles part");
+
+		styles = readText(entry);
+		fontCount = countElements(styles, "fonts", "font");
+		cellStyleCount = countElements(styles, "cellXfs", "xf");
+	}
+
+	/**
+	 * Reads inflated content of an entry as UTF-8 text
+	 */
+	private String readText(Entry entry) throws IOException  {
+		StringBuilder text = new StringBuilder();
+		Reader reader = new InputStreamReader(openEntry(entry), "UTF-8");
+		try {
+			char[] buffer = new char[8192];
+			int read;
+			while ((read = reader.read(buffer)) >= 0)
+				text.append(buffer, 0, read);
+		} finally {
+			reader.close();
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Removes the content type override and the relationship of the calculation chain part
+	 */
+	private String removeCalcChain(String xml)  {
+		String partName = "/" + calcChainPart;
+		return xml.replaceAll("<(?:\\w+:)?Override\\b[^>]*\\bPartName\\s*=\\s*[\"']" + Pattern.quote(partName) + "[\"'][^>]*>", "")
+			.replaceAll("<(?:\\w+:)?Relationship\\b[^>]*\\bType\\s*=\\s*[\"'][^\"']*" + RELATIONSHIP_TYPE_CALC_CHAIN + "[\"'][^>]*>", "");
+	}
+
+	/**
+	 * Counts child elements of the given list element of the styles part
+	 */
+	private int countElements(String xml, String list, String element) throws IOException  {
+		int[] bounds = listBounds(xml, list);
+		Matcher m = Pattern.compile("<(?:\\w+:)?" + element + "[\\s/>]").matcher(xml);
+		m.region(bounds[1], bounds[2]);
+		int count = 0;
+		while (m.find())
+			count++;
+		return count;
+	}
+
+	/**
+	 * Finds a list element of the styles part
+	 * @return Start of the start tag, end of the start tag, start of the end tag
+	 */
+	private int[] listBounds(String xml, String list) throws IOException  {
+		Matcher start = Pattern.compile("<((?:\\w+:)?)" + list + "\\b[^>]*?(/?)>").matcher(xml);
+		if (!start.find() || start.group(2).length() > 0)
+			throw new IOException("Styles part of workbook " + filePath + " has no " + list);
+		int end = xml.indexOf("</" + start.group(1) + list + ">", start.end());
+		if (end < 0)
+			throw new IOException("Styles part of workbook " + filePath + " has no end of " + list);
+		return new int[] { start.start(), start.end(), end };
+	}
+
+	/**
+	 * Returns the styles part with the added fonts and cell styles
+	 */
+	private String patchStyles() throws IOException  {
+		StringBuilder fonts = new StringBuilder();
+		StringBuilder cellStyles = new StringBuilder();
+		for (int i = 0; i < addedFontColors.size(); i++)  {
+			fonts.append("<font>").append(String.format(DEFAULT_FONT, addedFontColors.get(i))).append("</font>");
+			cellStyles.append("<xf numFmtId=\"0\" fontId=\"").append(fontCount + i).append("\" fillId=\"0\" borderId=\"0\" xfId=\"0\" applyFont=\"1\"/>");
+		}
+
+		String xml = insertIntoList(styles, "fonts", fonts.toString(), fontCount + addedFontColors.size());
+		return insertIntoList(xml, "cellXfs", cellStyles.toString(), cellStyleCount + addedFontColors.size());
+	}
+
+	private String insertIntoList(String xml, String list, String elements, int count) throws IOException  {
+		int[] bounds = listBounds(xml, list);
+		String startTag = xml.substring(bounds[0], bounds[1]);
+		String newStartTag = startTag.matches("(?s).*\\scount=\"\\d*\".*")
+			? startTag.replaceFirst("\\scount=\"\\d*\"", " count=\"" + count + "\"")
+			: startTag.substring(0, startTag.length() - 1) + " count=\"" + count + "\">";
+		return xml.substring(0, bounds[0]) + newStartTag + xml.substring(bounds[1], bounds[2]) + elements + xml.substring(bounds[2]);
+	}
+
+	/**
+	 * Copies the local header, compressed data and data descriptor of an entry without inflating them
+	 */
+	private void copyEntry(Entry entry, FileChannel out) throws IOException  {
+		long dataEnd = dataOffset(entry) + entry.compressedSize;
+		if ((entry.flags & FLAG_DATA_DESCRIPTOR) != 0)
+			dataEnd += read(dataEnd, 4).getInt(0) == DATA_DESCRIPTOR_SIGNATURE ? 16 : 12;
+
+		long position = entry.localHeaderOffset;
+		while (position < dataEnd)
+			position += channel.transferTo(position, dataEnd - position, out);
+	}
+
+	/**
+	 * Writes an entry rewritten on the fly, its size and CRC are written to the data descriptor
+	 * and to the central header
+	 */
+	private void writeChangedEntry(Entry entry, FileChannel outChannel, byte[] centralHeader) throws IOException  {
+		byte[] name = entry.name.getBytes("UTF-8");
+		int flags = (entry.flags & FLAG_UTF8) | FLAG_DATA_DESCRIPTOR;
+		ByteBuffer central = ByteBuffer.wrap(centralHeader).order(ByteOrder.LITTLE_ENDIAN);
+
+		ByteBuffer header = ByteBuffer.allocate(LOCAL_HEADER_SIZE + name.length).order(ByteOrder.LITTLE_ENDIAN);
+		header.putInt(LOCAL_HEADER_SIGNATURE).putShort((short) 20).putShort((short) flags).putShort((short) METHOD_DEFLATED);
+		header.putInt(central.getInt(12)); // Modification time and date
+		header.putInt(0).putInt(0).putInt(0).putShort((short) name.length).putShort((short) 0).put(name);
+		header.flip();
+		writeFully(outChannel, header);
+
+		final CRC32 crc = new CRC32();
+		final long[] size = new long[1];
+		long dataStart = outChannel.position();
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		// The streams are finished and flushed but not closed, closing them would close the output file
+		BufferedOutputStream buffered = new BufferedOutputStream(Channels.newOutputStream(outChannel));
+		DeflaterOutputStream deflated = new DeflaterOutputStream(buffered, deflater);
+		OutputStream data = new FilterOutputStream(deflated)  {
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException  {
+				crc.update(b, off, len);
+				size[0] += len;
+				out.write(b, off, len);
+			}
+
+			@Override
+			public void write(int b) throws IOException  {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+		};
+		try {
+			Writer writer = new BufferedWriter(new OutputStreamWriter(data, "UTF-8"));
+			if (patches.containsKey(entry.name))  {
+				Reader reader = new BufferedReader(new InputStreamReader(openEntry(entry), "UTF-8"));
+				try {
+					patchSheet(reader, writer, patches.get(entry.name));
+				} finally {
+					reader.close();
+				}
+			} else if (entry.name.equals(stylesPart) && !addedFontColors.isEmpty())  {
+				writer.write(patchStyles());
+			} else  {
+				writer.write(removeCalcChain(readText(entry)));
+			}
+			writer.flush();
+			deflated.finish();
+			buffered.flush();
+		} finally {
+			deflater.end();
+		}
+		long compressedSize = outChannel.position() - dataStart;
+		if (compressedSize > 0xffffffffL || size[0] > 0xffffffffL)
+			throw new IOException("Part " + entry.name + " is too large, zip64 is not supported");
+
+		ByteBuffer descriptor = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+		descriptor.putInt(DATA_DESCRIPTOR_SIGNATURE).putInt((int) crc.getValue()).putInt((int) compressedSize).putInt((int) size[0]);
+		descriptor.flip();
+		writeFully(outChannel, descriptor);
+
+		central.putShort(6, (short) 20).putShort(8, (short) flags).putShort(10, (short) METHOD_DEFLATED);
+		central.putInt(16, (int) crc.getValue()).putInt(20, (int) compressedSize).putInt(24, (int) size[0]);
+	}
+
+	/**
+	 * Copies the sheet XML and replaces or inserts the patched rows. Only the tags are looked at,
+	 * everything else is copied as it is, except for the dimension which is extended to the patched cells.
+	 */
+	private static void patchSheet(Reader in, Writer out, TreeMap<Integer, RowPatch> rows) throws IOException  {
+		TreeMap<Integer, RowPatch> pending = new TreeMap<Integer, RowPatch>(rows);
+		String prefix = "";
+		int lastRow = -1;
+		StringBuilder tag = new StringBuilder();
+		int ch;
+
+		while ((ch = in.read()) >= 0)  {
+			if (ch != '<')  {
+				out.write(ch);
+				continue;
+			}
+			readTag(in, tag);
+			String name = tagName(tag);
+			String localName = name.substring(name.indexOf(':') + 1);
+			boolean endTag = tag.charAt(1) == '/';
+			boolean emptyTag = tag.charAt(tag.length() - 2) == '/';
+
+			if (localName.equals("dimension") && !endTag)  {
+				out.append(extendDimension(tag, rows));
+				continue;
+			} else if (localName.equals("sheetData") && !endTag)  {
+				prefix = name.substring(0, name.indexOf(':') + 1);
+				if (emptyTag && !pending.isEmpty())  {
+					out.write(tag.substring(0, tag.length() - 2).trim() + ">");
+					writeRows(out, pending.headMap(Integer.MAX_VALUE), prefix);
+					out.write("</" + name + ">");
+					continue;
+				}
+			} else if (localName.equals("sheetData"))  {
+				writeRows(out, pending.headMap(Integer.MAX_VALUE), prefix);
+			} else if (localName.equals("row") && !endTag)  {
+				Matcher m = ROW_NUMBER.matcher(tag);
+				int rowIndex = m.find() ? Integer.parseInt(m.group(1)) - 1 : lastRow + 1;
+				lastRow = rowIndex;
+				writeRows(out, pending.headMap(rowIndex), prefix);
+				if (pending.containsKey(rowIndex))  {
+					writeRow(out, pending.remove(rowIndex), prefix, rowAttributes(tag, name));
+					if (!emptyTag)
+						skipRow(in, tag);
+					continue;
+				}
+			}
+			out.append(tag);
+		}
+	}
+
+	private static final Pattern ROW_NUMBER = Pattern.compile("\\sr\\s*=\\s*[\"'](\\d+)[\"']");
+	private static final Pattern ROW_NUMBER_OR_SPANS = Pattern.compile("\\s(?:r|spans)\\s*=\\s*(?:\"[^\"]*\"|'[^']*')");
+	private static final Pattern DIMENSION_REF = Pattern.compile("(\\sref\\s*=\\s*[\"'])([A-Z]+)(\\d+)(?::([A-Z]+)(\\d+))?([\"'])");
+
+	/**
+	 * @return Attributes of a row tag other than its number and spans, e.g. the row height and style
+	 */
+	private static String rowAttributes(StringBuilder tag, String name)  {
+		int end = tag.charAt(tag.length() - 2) == '/' ? tag.length() - 2 : tag.length() - 1;
+		return ROW_NUMBER_OR_SPANS.matcher(tag.substring(name.length() + 1, end)).replaceAll("").trim();
+	}
+
+	/**
+	 * @return Dimension tag with its range extended to cover the patched cells
+	 */
+	private static String extendDimension(StringBuilder tag, TreeMap<Integer, RowPatch> rows)  {
+		Matcher m = DIMENSION_REF.matcher(tag);
+		if (rows.isEmpty() || !m.find())
+			return tag.toString();
+
+		int firstRow = Integer.parseInt(m.group(3)) - 1;
+		int firstColumn = SheetXMLHandler.columnIndex(m.group(2));
+		int lastRow = m.group(5) != null ? Integer.parseInt(m.group(5)) - 1 : firstRow;
+		int lastColumn = m.group(4) != null ? SheetXMLHandler.columnIndex(m.group(4)) : firstColumn;
+		for (RowPatch row : rows.values())  {
+			if (row.values.length == 0)
+				continue;
+			firstRow = Math.min(firstRow, row.rowIndex);
+			lastRow = Math.max(lastRow, row.rowIndex);
+			firstColumn = Math.min(firstColumn, row.firstColumn);
+			lastColumn = Math.max(lastColumn, row.firstColumn + row.values.length - 1);
+		}
+
+		String ref = columnName(firstColumn) + (firstRow + 1);
+		if (lastRow != firstRow || lastColumn != firstColumn)
+			ref += ":" + columnName(lastColumn) + (lastRow + 1);
+		return tag.substring(0, m.start()) + m.group(1) + ref + m.group(6) + tag.substring(m.end());
+	}
+
+	/**
+	 * Reads a tag after its '&lt;' to the closing '&gt;', which may also appear in quoted attribute values
+	 */
+	private static void readTag(Reader in, StringBuilder tag) throws IOException  {
+		tag.setLength(0);
+		tag.append('<');
+		char quote = 0;
+		int ch;
+		while ((ch = in.read()) >= 0)  {
+			tag.append((char) ch);
+			if (quote != 0)  {
+				if (ch == quote)
+					quote = 0;
+			} else if (ch == '"' || ch == '\'')  {
+				quote = (char) ch;
+			} else if (ch == '>')  {
+				return;
+			}
+		}
+		throw new IOException("Unexpected end of sheet XML");
+	}
+
+	private static String tagName(StringBuilder tag)  {
+		int start = tag.charAt(1) == '/' ? 2 : 1;
+		int end = start;
+		while (end < tag.length() && !Character.isWhitespace(tag.charAt(end)) && tag.charAt(end) != '/' && tag.charAt(end) != '>')
+			end++;
+		return tag.substring(start, end);
+	}
+
+	/**
+	 * Skips the content of a row up to and including its end tag
+	 */
+	private static void skipRow(Reader in, StringBuilder tag) throws IOException  {
+		int ch;
+		while ((ch = in.read()) >= 0)  {
+			if (ch != '<')
+				continue;
+			readTag(in, tag);
+			String name = tagName(tag);
+			if (tag.charAt(1) == '/' && name.substring(name.indexOf(':') + 1).equals("row"))
+				return;
+		}
+		throw new IOException("Unexpected end of sheet XML");
+	}
+
+	/**
+	 * Writes the given rows and removes them from the pending rows
+	 */
+	private static void writeRows(Writer out, Map<Integer, RowPatch> rows, String prefix) throws IOException  {
+		for (RowPatch row : rows.values())
+			writeRow(out, row, prefix, "");
+		rows.clear();
+	}
+
+	/**
+	 * Writes a patched row with the given further attributes of the row tag
+	 */
+	private static void writeRow(Writer out, RowPatch row, String prefix, String attributes) throws IOException  {
+		String r = Integer.toString(row.rowIndex + 1);
+		out.write("<" + prefix + "row r=\"" + r + "\"");
+		if (row.values.length > 0)
+			out.write(" spans=\"" + (row.firstColumn + 1) + ":" + (row.firstColumn + row.values.length) + "\"");
+		if (attributes.length() > 0)
+			out.write(" " + attributes);
+		out.write(">");
+		for (int i = 0; i < row.values.length; i++)  {
+			double value = row.values[i];
+			out.write("<" + prefix + "c r=\"" + columnName(row.firstColumn + i) + r + "\" s=\"" + row.styles[i] + "\"><" + prefix + "v>");
+			out.write(value == Math.rint(value) && Math.abs(value) < 1e15 ? Long.toString((long) value) : Double.toString(value));
+			out.write("</" + prefix + "v></" + prefix + "c>");
+		}
+		out.write("</" + prefix + "row>");
+	}
+
+	/**
+	 * @return Column name in the A1 notation, e.g. 0 is A and 27 is AB
+	 */
+	private static String columnName(int column)  {
+		StringBuilder res = new StringBuilder();
+		for (int c = column + 1; c > 0; c = (c - 1) / 26)
+			res.insert(0, (char) ('A' + (c - 1) % 26));
+		return res.toString();
+	}
+
+	/**
+	 * Opens inflated content of an entry
+	 */
+	private InputStream openEntry(Entry entry) throws IOException  {
+		InputStream raw = new RangeInputStream(dataOffset(entry), entry.compressedSize);
+		if (entry.method == METHOD_STORED)
+			return raw;
+		if (entry.method != METHOD_DEFLATED)
+			throw new IOException("Part " + entry.name + " of workbook " + filePath + " has unsupported compression " + entry.method);
+		return new InflaterInputStream(raw, new Inflater(true), 8192)  {
+			@Override
+			public void close() throws IOException  {
+				super.close();
+				inf.end();
+			}
+		};
+	}
+
+	private long dataOffset(Entry entry) throws IOException  {
+		ByteBuffer header = read(entry.localHeaderOffset, LOCAL_HEADER_SIZE);
+		if (header.getInt(0) != LOCAL_HEADER_SIGNATURE)
+			throw new IOException("Corrupted zip entry " + entry.name + " of workbook " + filePath);
+		return entry.localHeaderOffset + LOCAL_HEADER_SIZE + (header.getShort(26) & 0xffff) + (header.getShort(28) & 0xffff);
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException  {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining())  {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("Unexpected end of workbook " + filePath);
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException  {
+		while (buffer.hasRemaining())
+			out.write(buffer);
+	}
+
+	/**
+	 * Stream of a range of the patched file, it doesn't move the position of the file
+	 */
+	private class RangeInputStream extends InputStream  {
+		private long position;
+		private final long end;
+
+		RangeInputStream(long position, long length)  {
+			this.position = position;
+			this.end = position + length;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException  {
+			if (position >= end)
+				return -1;
+			int read = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+			if (read < 0)
+				return -1;
+			position += read;
+			return read;
+		}
+
+		@Override
+		public int read() throws IOException  {
+			byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+	}
+}
@@ -0,0 +1,89 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * @author Pavel Janecka, Karel Petranek
+ * Lock-free histogram of non-negative values, e.g. durations in nanoseconds. Values are counted
+ * in power-of-two buckets, so recording is a few atomic increments and percentiles are accurate
+ * within a factor of two.
+ */
+public class Histogram {
+	private static final int BUCKETS = 64;
+
+	
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	private final AtomicLong min = new AtomicLong(Long.MAX_VALUE);
+	private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+	
+	/**
+	 * Records one value
+	 * @param value The value, negative values are counted as 0
+	 */
+	public void record(long value)  {
+		if (value < 0)
+			value = 0;
+		// Bucket i holds values with i significant bits
+		buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+		count.incrementAndGet();
+		sum.addAndGet(value);
+		
+		long current = min.get();
+		while (value < current && !min.compareAndSet(current, value))
+			current = min.get();
+		current = max.get();
+		while (value > current && !max.compareAndSet(current, value))
+			current = max.get();
+	}
+	
+	/**
+	 * @return Number of recorded values
+	 */
+	public long getCount()  {
+		return count.get();
+	}
+	
+	/**
+	 * @return Sum of recorded values
+	 */
+	public long getSum()  {
+		return sum.get();
+	}
+	
+	/**
+	 * @return Smallest recorded value, 0 when empty
+	 */
+	public long getMin()  {
+		return count.get() == 0 ? 0 : min.get();
+	}
+	
+	/**
+	 * @return Largest recorded value, 0 when empty
+	 */
+	public long getMax()  {
+		return count.get() == 0 ? 0 : max.get();
+	}
+	
+	/**
+	 * Returns an upper bound of the given percentile
+	 * @param percentile Percentile between 0 and 100
+	 * @return Upper bound of the bucket containing the percentile, 0 when empty
+	 */
+	public long getPercentile(double percentile)  {
+		long total = count.get();
+		if (total == 0)
+			return 0;
+		
+		long rank = (long) Math.ceil(total * percentile / 100.0);
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++)  {
+			seen += buckets.get(i);
+			if (seen >= rank && seen > 0)
+				return Math.min(i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1, getMax());
+		}
+		return getMax();
+	}
+}
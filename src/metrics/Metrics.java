@@ -0,0 +1,153 @@
+package metrics;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @author Pavel Janecka, Karel Petranek
+ * Named counters, histograms and gauges of an evaluation run. All methods can be called from more threads.
+ * Names are dot separated, e.g. "phase.write" or "warnings.malformed-answer".
+ */
+public class Metrics {
+	private final ConcurrentMap<String, AtomicLong> counters = new ConcurrentHashMap<String, AtomicLong>();
+	private final ConcurrentMap<String, Histogram> histograms = new ConcurrentHashMap<String, Histogram>();
+	private final ConcurrentMap<String, Double> gauges = new ConcurrentHashMap<String, Double>();
+	
+	/**
+	 * Returns counter with the given name, creating it when it doesn't exist
+	 * @param name Counter name
+	 * @return The counter
+	 */
+	public AtomicLong counter(String name)  {
+		AtomicLong counter = counters.get(name);
+		if (counter == null)  {
+			AtomicLong created = new AtomicLong();
+			counter = counters.putIfAbsent(name, created);
+			if (counter == null)
+				counter = created;
+		}
+		return counter;
+	}
+	
+	/**
+	 * Adds the given value to the counter
+	 * @param name Counter name
+	 * @param delta Added value
+	 */
+	public void add(String name, long delta)  {
+		counter(name).addAndGet(delta);
+	}
+	
+	/**
+	 * Returns histogram with the given name, creating it when it doesn't exist
+	 * @param name Histogram name
+	 * @return The histogram
+	 */
+	public Histogram histogram(String name)  {
+		Histogram histogram = histograms.get(name);
+		if (histogram == null)  {
+			Histogram created = new Histogram();
+			histogram = histograms.putIfAbsent(name, created);
+			if (histogram == null)
+				histogram = created;
+		}
+		return histogram;
+	}
+	
+	/**
+	 * Records duration from the given start to now
+	 * @param name Histogram name
+	 * @param startNanos Start time from {@link System#nanoTime()}
+	 * @return Current time, can be used as the start of the next phase
+	 */
+	public long time(String name, long startNanos)  {
+		long now = System.nanoTime();
+		histogram(name).record(now - startNanos);
+		return now;
+	}
+	
+	/**
+	 * Sets a value computed at the end of the run, e.g. a rate
+	 * @param name Gauge name
+	 * @param value The value
+	 */
+	public void gauge(String name, double value)  {
+		gauges.put(name, value);
+	}
+	
+	/**
+	 * Formats all metrics as a JSON object with "counters", "histograms" and "gauges" members,
+	 * names are sorted. Histogram values are in the recorded units (nanoseconds for durations).
+	 * @return JSON text
+	 */
+	public String toJson()  {
+		StringBuilder json = new StringBuilder();
+		json.append("{\n  \"counters\": {");
+		String separator = "\n";
+		for (Map.Entry<String, AtomicLong> entry : new TreeMap<String, AtomicLong>(counters).entrySet())  {
+			json.append(separator).append("    ").append(quote(entry.getKey())).append(": ").append(entry.getValue().get());
+			separator = ",\n";
+		}
+		json.append("\n  },\n  \"histograms\": {");
+		separator = "\n";
+		for (Map.Entry<String, Histogram> entry : new TreeMap<String, Histogram>(histograms).entrySet())  {
+			Histogram h = entry.getValue();
+			json.append(separator).append("    ").append(quote(entry.getKey())).append(": {")
+				.append("\"count\": ").append(h.getCount())
+				.append(", \"sum\": ").append(h.getSum())
+				.append(", \"min\": ").append(h.getMin())
+				.append(", \"max\": ").append(h.getMax())
+				.append(", \"p50\": ").append(h.getPercentile(50))
+				.append(", \"p90\": ").append(h.getPercentile(90))
+				.append(", \"p99\": ").append(h.getPercentile(99))
+				.append("}");
+			separator = ",\n";
+		}
+		json.append("\n  },\n  \"gauges\": {");
+		separator = "\n";
+		for (Map.Entry<String, Double> entry : new TreeMap<String, Double>(gauges).entrySet())  {
+			double value = entry.getValue();
+			json.append(separator).append("    ").append(quote(entry.getKey())).append(": ")
+				.append(Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.valueOf(value));
+			separator = ",\n";
+		}
+		json.append("\n  }\n}\n");
+		return json.toString();
+	}
+	
+	/**
+	 * Writes {@link #toJson()} to the given file
+	 * @param file Path to the report
+	 * @throws IOException When the file cannot be written
+	 */
+	public void writeJson(String file) throws IOException  {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+		try  {
+			writer.write(toJson());
+		} finally  {
+			writer.close();
+		}
+	}
+	
+	private static String quote(String s)  {
+		StringBuilder res = new StringBuilder(s.length() + 2);
+		res.append('"');
+		for (int i = 0; i < s.length(); i++)  {
+			char ch = s.charAt(i);
+			if (ch == '"' || ch == '\\')
+				res.append('\\').append(ch);
+			else if (ch < 0x20)
+				res.append(String.format("\\u%04x", (int) ch));
+			else
+				res.append(ch);
+		}
+		return res.append('"').toString();
+	}
+}
@@ -1,141 +1,181 @@
 package model;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 
 /**
  * @author KarelPetranek
  * Represents a correct or student's answer (depending on usage).
+ * Each choice of the answer is packed into a single long, the choices are kept sorted
+ * so that comparing two answers is a plain array comparison.
  */
 public class Answer {
-	private class AnswerField  {
-		List<Integer> variables = new ArrayList<Integer>();
-		
-		public AnswerField(int a, int b)  {
-			variables.add(a);
-			variables.add(b);
-		}
-		
-		public AnswerField(int a, int b, int c)  {
-			variables.add(a);
-			variables.add(b);
-			variables.add(c);
-		}
-		
-		public int getSize() { return variables.size(); }
-		
-		@Override
-		public String toString()  {
-			String res = "";
-			char ch = 'a';
-			for (Integer i : variables)  {
-				res += ch + " = " + i + ", ";
-				ch++;
-			}
-			if (!res.isEmpty())
-				res = res.substring(0, res.length() - 2);
-			return res;
-		}
-		
-		@Override
-		public boolean equals(Object oth)  {
-			if (oth instanceof AnswerField)  {
-				AnswerField o = (AnswerField)oth;
-				if (o.getSize() != getSize())
-					return false;
-				
-				for (int i = 0; i < getSize(); i++)  {
-					if (!variables.get(i).equals(o.variables.get(i)))
-						return false;
-				}
-				
-				return true;
-			}
-			
-			return false;
-		}
-	}
+	/**
+	 * Bits reserved for one variable of a packed choice
+	 */
+	static final int VARIABLE_BITS = 21;
+	private static final long VARIABLE_MASK = (1L << VARIABLE_BITS) - 1;
 	
-	List<AnswerField> answers = new ArrayList<AnswerField>();
+	/**
+	 * Marks a missing third variable of a choice with two variables only
+	 */
+	static final int NO_VARIABLE = -(1 << (VARIABLE_BITS - 1));
+	static final int MIN_VARIABLE = NO_VARIABLE + 1;
+	static final int MAX_VARIABLE = (1 << (VARIABLE_BITS - 1)) - 1;
+	
+	private static final long[] NO_CHOICES = new long[0];
+	
+	long[] choices = NO_CHOICES;
 	int questionId = -1;
+	int hash;
+	
+	/**
+	 * Answer shared by more students through {@link AnswerCache}, it cannot be modified
+	 */
+	boolean shared = false;
 	
 	/**
 	 * Creates an answer from the given description string. Multiple choices are 
-	 * separated by pipes, question variables are separated by commas
+	 * separated by pipes, question variables are separated by commas. Choices with an unknown
+	 * number of variables are skipped, see {@link AnswerParser#getSkippedChoices()}
 	 * @param input The description string
 	 * @param questionId ID of the question this answer belongs to
+	 * @throws NumberFormatException When the string is malformed, see {@link AnswerParser}
 	 */
-	public Answer(String input, int questionId)  {
+	public Answer(String input, int questionId) throws NumberFormatException  {
 		this.questionId = questionId;
 		
-		if (input == null || input.equals(""))
-			return;
-		
-		// Parse answer in the format a1,b1,c1|a2,b2,c2|...
-		String[] multipleChoices = input.split("\\|");
-		for (int i = 0; i < multipleChoices.length; i++)  {
-			String[] answerNumbers = multipleChoices[i].split(",");
-			switch (answerNumbers.length)  {
-			case 2:  {
-				int a = Integer.valueOf(answerNumbers[0]);
-				int b = Integer.valueOf(answerNumbers[1]);
-				answers.add(new AnswerField(a, b));
-			} break;
-			
-			case 3:  {
-				int a = Integer.valueOf(answerNumbers[0]);
-				int b = Integer.valueOf(answerNumbers[1]);
-				int c = Integer.valueOf(answerNumbers[2]);
-				answers.add(new AnswerField(a, b, c));				
-			} break;
-			
-			default:
-				System.out.println("Warning: answer with an unknown number of variables (" + answerNumbers.length + ")");
-			}
+		if (input != null && !input.equals(""))  {
+			AnswerParser parser = new AnswerParser();
+			choices = parser.parseChoices(input);
+			if (choices == null)
+				throw new NumberFormatException("Invalid answer \"" + input + "\": " + parser.getErrorMessage());
 		}
+		updateHash();
+	}
+	
+	/**
+	 * Creates an answer from already packed choices
+	 * @param choices Packed choices, see {@link #pack(int, int, int)}
+	 * @param questionId ID of the question this answer belongs to
+	 */
+	Answer(long[] choices, int questionId)  {
+		this.choices = choices.clone();
+		this.questionId = questionId;
+		Arrays.sort(this.choices);
+		updateHash();
+	}
+	
+	/**
+	 * Creates an answer from packed choices, taking ownership of the array
+	 * @param choices Packed choices
+	 * @param questionId ID of the question this answer belongs to
+	 * @param sorted True if the choices are already sorted
+	 */
+	Answer(long[] choices, int questionId, boolean sorted)  {
+		this.choices = choices;
+		this.questionId = questionId;
+		if (!sorted)
+			Arrays.sort(this.choices);
+		updateHash();
+	}
+	
+	/**
+	 * Packs variables of one choice into a long
+	 * @param a First variable
+	 * @param b Second variable
+	 * @param c Third variable or {@link #NO_VARIABLE} for a choice with two variables
+	 * @return Packed choice
+	 */
+	static long pack(int a, int b, int c)  {
+		return ((a & VARIABLE_MASK) << (2 * VARIABLE_BITS)) | ((b & VARIABLE_MASK) << VARIABLE_BITS) | (c & VARIABLE_MASK);
+	}
+	
+	/**
+	 * Unpacks one variable of a packed choice
+	 * @param choice Packed choice
+	 * @param index Index of the variable (0 to 2)
+	 * @return Value of the variable, {@link #NO_VARIABLE} for a missing third variable
+	 */
+	static int variable(long choice, int index)  {
+		int shift = (2 - index) * VARIABLE_BITS;
+		return (int)((choice << (64 - VARIABLE_BITS - shift)) >> (64 - VARIABLE_BITS));
+	}
+	
+	private void updateHash()  {
+		hash = Arrays.hashCode(choices) * 31 + questionId;
 	}
 	
 	@Override
 	public boolean equals(Object oth)  {
 		if (oth instanceof Answer)  {
 			Answer a = (Answer)oth;
-			if (a.questionId != questionId)
-				return false;
-			
-			if (a.answers.size() != answers.size())
-				return false;
-			
-			for (int i = 0; i < answers.size(); i++)  {
-				boolean found = false;
-				for (int j = 0; j < answers.size(); j++)  {
-					if (a.answers.get(i).equals(answers.get(i)))  {
-						found = true;
-						break;
-					}
-				}
-				
-				if (!found)
-					return false;
-			}
-			
-			return true;
+			return a.questionId == questionId && a.hash == hash && Arrays.equals(a.choices, choices);
 		}
 		return false;
 	}
 	
+	/**
+	 * Hash code consistent with {@link #equals(Object)}, it doesn't depend on the order of choices.
+	 * Note that changing the question ID changes the hash code.
+	 */
+	@Override
+	public int hashCode()  {
+		return hash;
+	}
+	
 	@Override
 	public String toString()  {
 		String res = "";
-		for (AnswerField f : answers)
-			res += f.toString() + "\n";
+		for (long choice : choices)  {
+			char ch = 'a';
+			for (int i = 0; i < 3; i++)  {
+				int v = variable(choice, i);
+				if (v == NO_VARIABLE)
+					break;
+				if (i > 0)
+					res += ", ";
+				res += ch + " = " + v;
+				ch++;
+			}
+			res += "\n";
+		}
 		return res;
 	}
 	
+	/**
+	 * Computes a 64-bit hash of the contents of the given answers, e.g. to find out whether
+	 * answers of a student changed since the last evaluation
+	 * @param answersById Answers indexed by question ID, may contain nulls
+	 * @return Hash of the answers
+	 */
+	public static long contentHash(Answer[] answersById)  {
+		long hash = 0xcbf29ce484222325L; // FNV-1a offset basis
+		for (int i = 0; i < answersById.length; i++)  {
+			if (answersById[i] == null)
+				continue;
+			hash = mixHash(hash, i);
+			hash = mixHash(hash, answersById[i].choices.length);
+			for (long choice : answersById[i].choices)
+				hash = mixHash(hash, choice);
+		}
+		return hash;
+	}
+	
+	private static long mixHash(long hash, long value)  {
+		for (int i = 0; i < 8; i++)  {
+			hash ^= (value >>> (i * 8)) & 0xff;
+			hash *= 0x100000001b3L; // FNV-1a prime
+		}
+		return hash;
+	}
+	
 	/**
 	 * @return True if the answer is empty (student left it blank)
 	 */
 	public boolean isEmpty()  {
-		return answers.isEmpty();
+		return choices.length == 0;
 	}
 	
 	/**
@@ -143,7 +183,7 @@ public class Answer {
 	 * @return Number of possible choices for this answer
 	 */
 	public int getChoiceCount()  {
-		return answers.size();
+		return choices.length;
 	}
 	
 	/**
@@ -156,21 +196,22 @@ public class Answer {
 	/**
 	 * Sets ID of the question that corresponds to this answer
 	 * @param id Question ID
+	 * @throws UnsupportedOperationException When the answer is shared by {@link AnswerCache}
 	 */
-	public void setQuestionId(int id)  {
+	public void setQuestionId(int id) throws UnsupportedOperationException  {
+		if (shared && id != questionId)
+			throw new UnsupportedOperationException("Shared answer cannot be modified");
 		questionId = id;
+		updateHash();
 	}
 
 	/**
 	 * @return This multichoice answer split to individual choices as an answer
 	 */
 	public List<Answer> getSubAnswers() {
-		List<Answer> res = new ArrayList<Answer>();
-		for (AnswerField af : answers)  {
-			Answer newA = new Answer("", questionId);
-			newA.answers.add(af);
-			res.add(newA);
-		}
+		List<Answer> res = new ArrayList<Answer>(choices.length);
+		for (long choice : choices)
+			res.add(new Answer(new long[] { choice }, questionId));
 		
 		return res;
 	}
@@ -0,0 +1,104 @@
+package model;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * @author KarelPetranek
+ *
+ * Cache of parsed student answers. Most students give one of a few answers to each question,
+ * so each distinct cell string is parsed once per question and the resulting {@link Answer}
+ * is shared by all students who gave it. Shared answers cannot be modified.
+ * Every question keeps only the most recently used strings. The cache can be used from more threads.
+ */
+public class AnswerCache  {
+	/**
+	 * Least recently used answers of one question
+	 */
+	private static class QuestionAnswers extends LinkedHashMap<String, Answer>  {
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+		
+		QuestionAnswers(int capacity)  {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Answer> eldest)  {
+			return size() > capacity;
+		}
+	}
+	
+	private final int capacityPerQuestion;
+	private final ConcurrentMap<Integer, QuestionAnswers> questions = new ConcurrentHashMap<Integer, QuestionAnswers>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	
+	/**
+	 * Creates an empty cache
+	 * @param capacityPerQuestion Maximal number of distinct answers kept for one question
+	 */
+	public AnswerCache(int capacityPerQuestion)  {
+		if (capacityPerQuestion < 1)
+			throw new IllegalArgumentException("Capacity must be positive");
+		this.capacityPerQuestion = capacityPerQuestion;
+	}
+	
+	/**
+	 * Returns the answer parsed from the given string, parsing it only when it is not cached.
+	 * Malformed strings are not cached.
+	 * @param input The description string, see {@link Answer#Answer(String, int)}
+	 * @param questionId ID of the question the answer belongs to
+	 * @param parser Parser of the calling thread, holds the error of a malformed string
+	 * @return Shared read-only answer or null when the string is malformed
+	 */
+	public Answer get(String input, int questionId, AnswerParser parser)  {
+		QuestionAnswers answers = questions.get(questionId);
+		if (answers == null)  {
+			QuestionAnswers created = new QuestionAnswers(capacityPerQuestion);
+			answers = questions.putIfAbsent(questionId, created);
+			if (answers == null)
+				answers = created;
+		}
+		
+		synchronized (answers)  {
+			Answer cached = answers.get(input);
+			if (cached != null)  {
+				hits.incrementAndGet();
+				return cached;
+			}
+		}
+		
+		// Parse outside of the lock, two threads may parse the same string but only one result is kept
+		Answer parsed = parser.parse(input, questionId);
+		misses.incrementAndGet();
+		if (parsed == null)
+			return null;
+		parsed.shared = true;
+		synchronized (answers)  {
+			Answer cached = answers.get(input);
+			if (cached != null)
+				return cached;
+			answers.put(input, parsed);
+		}
+		return parsed;
+	}
+	
+	/**
+	 * @return Number of answers returned from the cache
+	 */
+	public long getHits()  {
+		return hits.get();
+	}
+	
+	/**
+	 * @return Number of answers that had to be parsed
+	 */
+	public long getMisses()  {
+		return misses.get();
+	}
+}
@@ -0,0 +1,164 @@
+package model;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * @author KarelPetranek
+ *
+ * Compact binary form of a parsed answer key. Answers are stored as their packed choices
+ * and models as enum ordinals, so reading the key back needs no string parsing.
+ * The file carries the hash of the question sheets it was created from.
+ */
+public class AnswerKeyCodec  {
+	private static final int MAGIC = 0x444b4559; // "DKEY"
+	private static final int VERSION = 2; // 2: M10 and M11 are no longer parsed as M1
+	
+	/**
+	 * Writes the questions to the given file
+	 * @param file Target file
+	 * @param keyHash Hash of the question sheets the questions were parsed from
+	 * @param questions The questions
+	 * @throws IOException When the file cannot be written
+	 */
+	public static void write(File file, String keyHash, List<Question> questions) throws IOException  {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try  {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(keyHash);
+			writeQuestions(out, questions);
+		} finally  {
+			out.close();
+		}
+	}
+	
+	private static void writeQuestions(DataOutputStream out, List<Question> questions) throws IOException  {
+		out.writeInt(questions.size());
+		for (Question q : questions)  {
+			out.writeInt(q.id);
+			out.writeInt(q.answerModels.size());
+			for (ModelsAndAnswer ma : q.answerModels)  {
+				out.writeInt(ma.answer.choices.length);
+				for (long choice : ma.answer.choices)
+					out.writeLong(choice);
+				out.writeInt(ma.models.size());
+				for (Model m : ma.models)  {
+					out.writeByte(m.getMain().ordinal());
+					out.writeByte(m.getSub().ordinal());
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Computes hash of the parsed questions, e.g. for keys that don't come from question sheets
+	 * @param questions The questions
+	 * @return Hex string of the hash
+	 */
+	public static String hashOf(List<Question> questions)  {
+		try  {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			DataOutputStream out = new DataOutputStream(new DigestOutputStream(new ByteArrayOutputStream(), digest));
+			writeQuestions(out, questions);
+			out.flush();
+			
+			StringBuilder hex = new StringBuilder();
+			for (byte b : digest.digest())
+				hex.append(String.format("%02x", b & 0xff));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e)  {
+			throw new IllegalStateException(e);
+		} catch (IOException e)  {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	/**
+	 * Reads questions from the given file. Counts read from the file are checked against its length,
+	 * so a damaged file is rejected instead of allocating huge arrays.
+	 * @param file Source file
+	 * @param keyHash Hash of the current question sheets
+	 * @return The questions or null if the file doesn't exist, is damaged or was written for different question sheets
+	 * @throws IOException When the file cannot be read
+	 */
+	public static List<Question> read(File file, String keyHash) throws IOException  {
+		if (!file.exists())
+			return null;
+		
+		long limit = file.length();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try  {
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !in.readUTF().equals(keyHash))
+				return null;
+			
+			Model.MainModel[] mains = Model.MainModel.values();
+			Model.SubModel[] subs = Model.SubModel.values();
+			int questionCount = readCount(in, limit / 8);
+			if (questionCount < 0)
+				return null;
+			List<Question> questions = new ArrayList<Question>(questionCount);
+			for (int i = 0; i < questionCount; i++)  {
+				int id = in.readInt();
+				int answerCount = readCount(in, limit / 8);
+				if (answerCount < 0)
+					return null;
+				List<ModelsAndAnswer> answers = new ArrayList<ModelsAndAnswer>(answerCount);
+				for (int j = 0; j < answerCount; j++)  {
+					int choiceCount = readCount(in, limit / 8);
+					if (choiceCount < 0)
+						return null;
+					long[] choices = new long[choiceCount];
+					for (int k = 0; k < choices.length; k++)
+						choices[k] = in.readLong();
+					int modelCount = readCount(in, limit / 2);
+					if (modelCount < 0)
+						return null;
+					List<Model> models = new ArrayList<Model>(modelCount);
+					for (int k = 0; k < modelCount; k++)  {
+						int main = in.readUnsignedByte();
+						int sub = in.readUnsignedByte();
+						if (main >= mains.length || sub >= subs.length)
+							return null;
+						models.add(Model.of(mains[main], subs[sub]));
+					}
+					answers.add(new ModelsAndAnswer(new Answer(choices, id), models));
+				}
+				questions.add(new Question(id, answers));
+			}
+			return questions;
+		} catch (EOFException e)  {
+			return null;
+		} catch (RuntimeException e)  {
+			// Values which passed the checks above but still don't form a valid key
+			return null;
+		} finally  {
+			in.close();
+		}
+	}
+	
+	/**
+	 * Reads a count of items
+	 * @param in Source stream
+	 * @param limit Maximum count that can fit into the rest of the file
+	 * @return The count or -1 if it is negative or larger than the limit
+	 * @throws IOException When the stream cannot be read
+	 */
+	private static int readCount(DataInputStream in, long limit) throws IOException  {
+		int count = in.readInt();
+		return count < 0 || count > limit ? -1 : count;
+	}
+}
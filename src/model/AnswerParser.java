@@ -0,0 +1,201 @@
+package model;
+import java.util.Arrays;
+
+
+/**
+ * @author KarelPetranek
+ *
+ * Single pass parser of answer strings in the format a1,b1,c1|a2,b2,c2|... Variables are read
+ * directly from the characters into packed choices, see {@link Answer#pack(int, int, int)}.
+ * Numbers may be surrounded by spaces and may have a zero fraction ("20.0"), as numeric cells are
+ * converted to strings this way. Malformed strings are reported by an error code instead of an exception.
+ * <p>
+ * Choices with a wrong number of variables are skipped, like before, and counted by {@link #getSkippedChoices()}
+ * so that the caller can report them. A variable out of the range of packed choices makes the whole string malformed.
+ * A parser instance is not thread safe, but it can be reused.
+ */
+public class AnswerParser  {
+	/** The string was parsed */
+	public static final int ERROR_NONE = 0;
+	/** The string contains a character that is not allowed */
+	public static final int ERROR_CHARACTER = 1;
+	/** A variable is missing between separators */
+	public static final int ERROR_MISSING_NUMBER = 2;
+	/** A number has non-zero fraction */
+	public static final int ERROR_FRACTION = 3;
+	/** A number does not fit to int */
+	public static final int ERROR_OVERFLOW = 4;
+	/** A variable is out of the range of packed choices */
+	public static final int ERROR_RANGE = 5;
+	
+	private static final String[] ERROR_MESSAGES = {
+		"no error",
+		"unexpected character",
+		"missing number",
+		"number is not an integer",
+		"number is too large",
+		"variable is out of range"
+	};
+	
+	private long[] buffer = new long[4];
+	private int errorCode = ERROR_NONE;
+	private int errorIndex = -1;
+	private long skippedChoices = 0;
+	
+	// State of the current choice
+	private final int[] variables = new int[3];
+	private int variableCount;
+	private int emptyVariables;
+	private int emptyIndex;
+	
+	/**
+	 * Parses the given string
+	 * @param input The description string
+	 * @param questionId ID of the question the answer belongs to
+	 * @return The answer or null when the string is malformed, see {@link #getErrorCode()}
+	 */
+	public Answer parse(CharSequence input, int questionId)  {
+		long[] choices = parseChoices(input);
+		return choices == null ? null : new Answer(choices, questionId, true);
+	}
+	
+	/**
+	 * Parses the given string into sorted packed choices
+	 * @param input The description string
+	 * @return Sorted packed choices or null when the string is malformed, see {@link #getErrorCode()}
+	 */
+	long[] parseChoices(CharSequence input)  {
+		errorCode = ERROR_NONE;
+		errorIndex = -1;
+		int count = 0;
+		startChoice();
+		
+		long number = 0;
+		boolean negative = false;
+		int digits = 0;
+		boolean fraction = false;
+		boolean numberEnded = false; // a space after the number
+		
+		int length = input.length();
+		for (int i = 0; i <= length; i++)  {
+			char ch = i < length ? input.charAt(i) : '|';
+			if (ch >= '0' && ch <= '9')  {
+				if (numberEnded)
+					return error(ERROR_CHARACTER, i);
+				if (fraction)  {
+					if (ch != '0')
+						return error(ERROR_FRACTION, i);
+					continue;
+				}
+				number = number * 10 + (ch - '0');
+				digits++;
+				if (number > (long) Integer.MAX_VALUE + 1)
+					return error(ERROR_OVERFLOW, i);
+			} else if (ch == '-' && digits == 0 && !negative && !fraction)  {
+				negative = true;
+			} else if (ch == '.' && digits > 0 && !fraction && !numberEnded)  {
+				fraction = true;
+			} else if (ch == ' ' || ch == '\t')  {
+				if (digits > 0 || negative)
+					numberEnded = true;
+			} else if (ch == ',' || ch == '|')  {
+				if (negative && digits == 0)
+					return error(ERROR_MISSING_NUMBER, i);
+				if (digits > 0)  {
+					long value = negative ? -number : number;
+					if (value > Integer.MAX_VALUE)
+						return error(ERROR_OVERFLOW, i);
+					if (value < Answer.MIN_VARIABLE || value > Answer.MAX_VARIABLE)
+						return error(ERROR_RANGE, i);
+					if (emptyVariables > 0)
+						return error(ERROR_MISSING_NUMBER, emptyIndex);
+					addVariable((int) value);
+				} else if (emptyVariables++ == 0)  {
+					emptyIndex = i;
+				}
+				number = 0;
+				negative = false;
+				digits = 0;
+				fraction = false;
+				numberEnded = false;
+				
+				if (ch == '|')  {
+					long choice = endChoice();
+					if (choice != Long.MIN_VALUE)  {
+						if (count == buffer.length)
+							buffer = Arrays.copyOf(buffer, count * 2);
+						buffer[count++] = choice;
+					}
+					startChoice();
+				}
+			} else  {
+				return error(ERROR_CHARACTER, i);
+			}
+		}
+		
+		long[] choices = Arrays.copyOf(buffer, count);
+		Arrays.sort(choices);
+		return choices;
+	}
+	
+	private void startChoice()  {
+		variableCount = 0;
+		emptyVariables = 0;
+	}
+	
+	private void addVariable(int value)  {
+		if (variableCount < variables.length)
+			variables[variableCount] = value;
+		variableCount++;
+	}
+	
+	/**
+	 * @return Packed choice or Long.MIN_VALUE when the choice is skipped
+	 */
+	private long endChoice()  {
+		// An empty choice, e.g. after a trailing pipe, is ignored
+		if (variableCount == 0)
+			return Long.MIN_VALUE;
+		if (variableCount < 2 || variableCount > 3)  {
+			skippedChoices++;
+			return Long.MIN_VALUE;
+		}
+		return Answer.pack(variables[0], variables[1], variableCount == 3 ? variables[2] : Answer.NO_VARIABLE);
+	}
+	
+	private long[] error(int code, int index)  {
+		errorCode = code;
+		errorIndex = index;
+		return null;
+	}
+	
+	/**
+	 * @return Error code of the last parsed string, {@link #ERROR_NONE} when it was parsed
+	 */
+	public int getErrorCode()  {
+		return errorCode;
+	}
+	
+	/**
+	 * @return Index of the character where the last error was found, -1 when there was no error
+	 */
+	public int getErrorIndex()  {
+		return errorIndex;
+	}
+	
+	/**
+	 * @return Number of choices with an unknown number of variables skipped in all strings parsed by this parser
+	 */
+	public long getSkippedChoices()  {
+		return skippedChoices;
+	}
+	
+	/**
+	 * @return Description of the last error
+	 */
+	public String getErrorMessage()  {
+		if (errorCode == ERROR_NONE)
+			return ERROR_MESSAGES[ERROR_NONE];
+		return ERROR_MESSAGES[errorCode] + " at position " + (errorIndex + 1);
+	}
+}
@@ -1,4 +1,5 @@
 package model;
+import java.util.Arrays;
 import java.util.List;
 
 
@@ -7,6 +8,16 @@ import java.util.List;
  * Evaluation of one student answers.
  */
 public class Evaluation {
+	/**
+	 * Lowest number of consistent answers for which Dehnadi's test judges the student consistent
+	 */
+	public static final int CONSISTENT_SCORE = 8;
+	
+	/**
+	 * Number of students evaluated at once by {@link #evaluateBatch(List, int[][])}, the counters of the block fit in the CPU cache
+	 */
+	private static final int STUDENTS_PER_BLOCK = 256;
+	
 	private Answer answerForQuestion(Question q, List<Answer> answers)  {
 		for (Answer a : answers)  {
 			if (q.getId() == a.getQuestionId())
@@ -19,7 +30,7 @@ public class Evaluation {
 	
 	/**
 	 * Accumulator - the accumulator contains a triple for each main model. Each field
-	 * of the triple corresponds to one submodel.
+	 * of the triple corresponds to one submodel, see {@link Model#getSlotMask()} for the layout.
 	 */
 	int[] accumulator;
 	
@@ -27,32 +38,14 @@ public class Evaluation {
 	 * Creates a new evaluation
 	 */
 	public Evaluation()  {
-		accumulator = new int[(Model.MainModel.values().length - 1) * (Model.SubModel.values().length - 1)];
-		
-	}
-	
-	private void addModelToAccumulator(Model m, int[] accum) {
-		if (m.getMain() == Model.MainModel.NoModel)
-			return;
+		accumulator = new int[Model.SLOT_COUNT];
 		
-		int mainIndex = m.getMain().ordinal() - 1; // -1 - first item is NoModel
-		
-		// No specific submodel - increase all submodels
-		if (m.getSub() == Model.SubModel.NoSubmodel)  {
-			for (int i = 0; i < Model.SubModel.values().length - 1; i++)  {
-				accum[mainIndex + i]++;
-			}
-		} else {
-			// Increase only specific submodel
-			int subIndex = m.getSub().ordinal() - 1;
-			accum[mainIndex + subIndex]++; 
-		}
 	}
 	
-	private void addQuestionAccumulator(int[] questionAccum)  {
-		for (int i = 0; i < questionAccum.length; i++)  {
-			if (questionAccum[i] > 0)
-				accumulator[i]++;
+	private void addSlotMask(long mask)  {
+		while (mask != 0)  {
+			accumulator[Long.numberOfTrailingZeros(mask)]++;
+			mask &= mask - 1;
 		}
 	}
 	
@@ -70,19 +63,136 @@ public class Evaluation {
 			if (a == null)
 				continue;
 			
-			List<Model> models = q.modelsForAnswer(a);
-			int[] questionAccumulator = new int[accumulator.length];
-			for (Model m : models)  {
-				addModelToAccumulator(m, questionAccumulator);
-			}
-			addQuestionAccumulator(questionAccumulator);
+			// Each slot is counted at most once per question
+			addSlotMask(q.slotMaskForAnswer(a));
 		}
 
+		return maxConsistency();
+	}
+	
+	/**
+	 * Evaluates one student answers
+	 * @param questions List of questions in the test
+	 * @param answersById Corresponding student answers indexed by question ID, questions without an answer
+	 * are either out of the array range or null
+	 * @return Number of consistent answers, see {@link #evaluate(List, List)}
+	 */
+	public int evaluate(List<Question> questions, Answer[] answersById)  {
+		for (Question q : questions)  {
+			int id = q.getId();
+			if (id < 0 || id >= answersById.length || answersById[id] == null)
+				continue;
+			
+			addSlotMask(q.slotMaskForAnswer(answersById[id]));
+		}
+		
+		return maxConsistency();
+	}
+	
+	/**
+	 * Evaluates a whole cohort at once, in blocks of students, see {@link #evaluateColumns(Question[], int[], int, int, int[], int)}.
+	 * The scores are the same as of {@link #evaluate(List, Answer[])}.
+	 * @param questions List of questions in the test
+	 * @param answerIds Answer IDs of the students, [student][index of the question in questions], see
+	 * {@link Question#answerIdOf(Answer)}. 0 or a missing element means the question has no valid answer.
+	 * @return Number of consistent answers of each student
+	 */
+	public static int[] evaluateBatch(List<Question> questions, int[][] answerIds)  {
+		Question[] qs = questions.toArray(new Question[questions.size()]);
+		int[] scores = new int[answerIds.length];
+		int[] columns = new int[qs.length * STUDENTS_PER_BLOCK];
+		long[] carries = new long[STUDENTS_PER_BLOCK];
+		long[] planes = new long[planeCount(qs) * STUDENTS_PER_BLOCK];
+		for (int first = 0; first < answerIds.length; first += STUDENTS_PER_BLOCK)  {
+			int count = Math.min(STUDENTS_PER_BLOCK, answerIds.length - first);
+			
+			// Answer IDs of the block question by question
+			for (int s = 0; s < count; s++)  {
+				int[] ids = answerIds[first + s];
+				for (int q = 0; q < qs.length; q++)
+					columns[q * STUDENTS_PER_BLOCK + s] = q < ids.length ? ids[q] : 0;
+			}
+			evaluateColumns(qs, columns, STUDENTS_PER_BLOCK, count, scores, first, carries, planes);
+		}
+		return scores;
+	}
+	
+	/**
+	 * Evaluates a block of students whose answer IDs are stored question by question. The counters are bit-sliced:
+	 * bit i of plane p of a student is bit p of the counter of slot i, see {@link Model#getSlotMask()}.
+	 * Adding a slot mask to all counters of a student is then a few bitwise operations per plane,
+	 * the inner loops run over primitive arrays without branches, so they can be vectorized.
+	 * The scores are the same as of {@link #evaluate(List, Answer[])}.
+	 * @param questions Questions of the columns, null for a column that is not evaluated
+	 * @param columns Answer IDs, the ID of student s for question q is at index q * stride + s, see
+	 * {@link Question#answerIdOf(Answer)}. 0 means the question has no valid answer.
+	 * @param stride Distance between the columns of two questions, at least count
+	 * @param count Number of students in the block
+	 * @param scores Receives number of consistent answers of each student
+	 * @param offset Index in scores of the first student of the block
+	 */
+	public static void evaluateColumns(Question[] questions, int[] columns, int stride, int count, int[] scores, int offset)  {
+		evaluateColumns(questions, columns, stride, count, scores, offset, new long[stride], new long[planeCount(questions) * stride]);
+	}
+	
+	/**
+	 * Each slot is counted at most once per question, so the counters never exceed the number of questions
+	 * @return Number of bit planes of the counters
+	 */
+	private static int planeCount(Question[] questions)  {
+		return Math.max(1, 32 - Integer.numberOfLeadingZeros(questions.length));
+	}
+	
+	/**
+	 * @param carries Work array of at least stride elements
+	 * @param planes Work array of at least {@link #planeCount(Question[])} * stride elements
+	 * @see #evaluateColumns(Question[], int[], int, int, int[], int)
+	 */
+	private static void evaluateColumns(Question[] questions, int[] columns, int stride, int count, int[] scores, int offset, long[] carries, long[] planes)  {
+		int planeCount = planeCount(questions);
+		for (int p = 0; p < planeCount; p++)
+			Arrays.fill(planes, p * stride, p * stride + count, 0);
+		
+		for (int q = 0; q < questions.length; q++)  {
+			if (questions[q] == null)
+				continue;
+			long[] slotMasks = questions[q].slotMasksById;
+			int column = q * stride;
+			for (int s = 0; s < count; s++)  {
+				int id = columns[column + s];
+				carries[s] = id > 0 && id < slotMasks.length ? slotMasks[id] : 0;
+			}
+			
+			// Ripple-carry addition of the masks to the counters of all slots at once
+			for (int p = 0; p < planeCount; p++)  {
+				int base = p * stride;
+				for (int s = 0; s < count; s++)  {
+					long plane = planes[base + s];
+					planes[base + s] = plane ^ carries[s];
+					carries[s] &= plane;
+				}
+			}
+		}
+		
+		// The maximum counter bit by bit from the highest plane, keeping the slots that can still be the maximum
+		for (int s = 0; s < count; s++)  {
+			long candidates = -1L;
+			int score = 0;
+			for (int p = planeCount - 1; p >= 0; p--)  {
+				long set = candidates & planes[p * stride + s];
+				long nonZero = (set | -set) >>> 63;
+				candidates ^= (candidates ^ set) & -nonZero;
+				score |= (int) nonZero << p;
+			}
+			scores[offset + s] = score;
+		}
+	}
+	
+	private int maxConsistency()  {
 		// Find maximum consistency
 		int max = 0;
 		for (int i = 0; i < accumulator.length; i++)
-			if (accumulator[i] > max)
-				max = accumulator[i];
+			max = Math.max(max, accumulator[i]);
 		return max;
 	}
 
@@ -1,6 +1,10 @@
 package model;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -40,6 +44,11 @@ public class Model {
 		S3
 	}
 	
+	/**
+	 * Number of accumulator slots, one for each pair of main model and submodel (without NoModel and NoSubmodel)
+	 */
+	public static final int SLOT_COUNT = (MainModel.values().length - 1) * (SubModel.values().length - 1);
+	
 	private MainModel main;
 	private SubModel sub;
 	
@@ -58,15 +67,109 @@ public class Model {
 	}
 	
 	/**
-	 * Creates a new model
+	 * Shared instances of all pairs of main model and submodel, indexed by ordinals
+	 */
+	private static final Model[][] INSTANCES = new Model[MainModel.values().length][SubModel.values().length];
+	
+	/**
+	 * Main models and submodels by their names, upper-case
+	 */
+	private static final Map<String, MainModel> MAIN_MODELS = new HashMap<String, MainModel>();
+	private static final Map<String, SubModel> SUB_MODELS = new HashMap<String, SubModel>();
+	
+	static  {
+		for (MainModel m : MainModel.values())  {
+			MAIN_MODELS.put(m.toString().toUpperCase(), m);
+			for (SubModel s : SubModel.values())
+				INSTANCES[m.ordinal()][s.ordinal()] = new Model(m, s);
+		}
+		for (SubModel s : SubModel.values())
+			SUB_MODELS.put(s.toString().toUpperCase(), s);
+	}
+	
+	/**
+	 * Maximal number of distinct model strings kept by {@link #parseModels(String)}
+	 */
+	private static final int PARSE_CACHE_SIZE = 1024;
+	
+	/**
+	 * Recently parsed model strings, least recently used are dropped
+	 */
+	private static final Map<String, List<Model>> parseCache = new LinkedHashMap<String, List<Model>>(64, 0.75f, true)  {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, List<Model>> eldest)  {
+			return size() > PARSE_CACHE_SIZE;
+		}
+	};
+	
+	/**
+	 * Creates a model. Models created by this constructor are not the shared instances, but they are
+	 * equal to them.
 	 * @param main Main model
 	 * @param sub Submodel
+	 * @deprecated Use {@link #of(MainModel, SubModel)}, which returns the shared instance
 	 */
+	@Deprecated
 	public Model(MainModel main, SubModel sub)  {
 		this.main = main;
 		this.sub = sub;
 	}
 	
+	/**
+	 * Returns the model of the given main model and submodel. There is a single shared
+	 * instance for each pair, so models returned by this method can be compared by identity.
+	 * @param main Main model
+	 * @param sub Submodel
+	 * @return The model
+	 */
+	public static Model of(MainModel main, SubModel sub)  {
+		return INSTANCES[main.ordinal()][sub.ordinal()];
+	}
+	
+	/**
+	 * Returns bitmask of accumulator slots this model counts to. Slot of a main model and submodel is
+	 * (main - 1) * submodel count + (sub - 1), a model without a submodel counts to all submodels of its main model.
+	 * @return Bitmask of slots, 0 for NoModel
+	 */
+	public long getSlotMask()  {
+		if (main == MainModel.NoModel)
+			return 0;
+		
+		int subCount = SubModel.values().length - 1;
+		int mainIndex = (main.ordinal() - 1) * subCount; // -1 - first item is NoModel
+		if (sub == SubModel.NoSubmodel)
+			return ((1L << subCount) - 1) << mainIndex;
+		return 1L << (mainIndex + sub.ordinal() - 1);
+	}
+	
+	/**
+	 * Returns bitmask of accumulator slots counted by any of the given models
+	 * @param models The models
+	 * @return Bitmask of slots
+	 * @see #getSlotMask()
+	 */
+	public static long slotMask(List<Model> models)  {
+		long mask = 0;
+		for (Model m : models)
+			mask |= m.getSlotMask();
+		return mask;
+	}
+	
+	@Override
+	public boolean equals(Object obj)  {
+		if (!(obj instanceof Model))
+			return false;
+		Model m = (Model) obj;
+		return main == m.main && sub == m.sub;
+	}
+	
+	@Override
+	public int hashCode()  {
+		return main.ordinal() * SubModel.values().length + sub.ordinal();
+	}
+	
 	@Override
 	public String toString()  {
 		String res = "";
@@ -76,46 +179,80 @@ public class Model {
 	
 	/**
 	 * Creates a list of model from a formatted string. The models are separated by pipes, model and
-	 * submodel are separated by a comma.
+	 * submodel are separated by a comma. Names are matched exactly (ignoring case and surrounding spaces),
+	 * unknown names give NoModel or NoSubmodel. Results are cached, the returned list cannot be modified.
 	 * @param str The string representing the models
 	 * @return Parsed models
 	 */
 	public static List<Model> parseModels(String str)  {
-		String[] models = str.split("\\|");
-		List<Model> result = new ArrayList<Model>();
-		for (int i = 0; i < models.length; i++)  {
-			String[] modelAndSubmodel = models[i].split(",");
-			switch (modelAndSubmodel.length)  {
-			case 1:
-				result.add(new Model(stringToModel(modelAndSubmodel[0]), SubModel.NoSubmodel));
-			break;
-			
-			case 2:
-				result.add(new Model(stringToModel(modelAndSubmodel[0]), stringToSubmodel(modelAndSubmodel[1])));
-			break;
+		synchronized (parseCache)  {
+			List<Model> cached = parseCache.get(str);
+			if (cached != null)
+				return cached;
+		}
+		
+		List<Model> result = Collections.unmodifiableList(parseModelsUncached(str));
+		synchronized (parseCache)  {
+			parseCache.put(str, result);
+		}
+		return result;
+	}
+	
+	private static List<Model> parseModelsUncached(String str)  {
+		List<Model> result = new ArrayList<Model>(2);
+		int end = str.length();
+		// Trailing empty models are ignored
+		while (end > 0 && str.charAt(end - 1) == '|')
+			end--;
+		
+		int start = 0;
+		do  {
+			int pipe = str.indexOf('|', start);
+			if (pipe < 0 || pipe > end)
+				pipe = end;
 			
-			default:
+			int comma = str.indexOf(',', start);
+			if (comma < 0 || comma > pipe)  {
+				result.add(of(stringToModel(str.substring(start, pipe)), SubModel.NoSubmodel));
+			} else if (str.indexOf(',', comma + 1) < 0 || str.indexOf(',', comma + 1) > pipe)  {
+				result.add(of(stringToModel(str.substring(start, comma)), stringToSubmodel(str.substring(comma + 1, pipe))));
+			} else  {
 				System.out.println("Warning: invalid model/submodel format: " + str);
 			}
-		}
+			start = pipe + 1;
+		} while (start < end);
 		
 		return result;
 	}
 
-	private static MainModel stringToModel(String string) {
-		for (MainModel m : MainModel.values())  {
-			if (string.toUpperCase().startsWith(m.toString().toUpperCase()))
-				return m;
+	/**
+	 * Returns model and submodel names of a formatted string that are not known, they are parsed
+	 * as NoModel or NoSubmodel by {@link #parseModels(String)}. Meant for validation of the answer key.
+	 * @param str The string representing the models
+	 * @return Unknown names in the order of appearance, empty if all names are known
+	 */
+	public static List<String> unknownTokens(String str)  {
+		List<String> result = new ArrayList<String>();
+		for (String model : str.split("\\|"))  {
+			String[] modelAndSubmodel = model.split(",");
+			for (int i = 0; i < modelAndSubmodel.length && i < 2; i++)  {
+				String token = modelAndSubmodel[i].trim();
+				Map<String, ?> known = i == 0 ? MAIN_MODELS : SUB_MODELS;
+				if (token.length() > 0 && !known.containsKey(token.toUpperCase()))
+					result.add(token);
+			}
 		}
-		return MainModel.NoModel;
+		return result;
+	}
+	
+	private static MainModel stringToModel(String string) {
+		MainModel m = MAIN_MODELS.get(string.trim().toUpperCase());
+		return m == null ? MainModel.NoModel : m;
 	}
 	
 	private static SubModel stringToSubmodel(String string) {
-		for (SubModel m : SubModel.values())  {
-			if (string.toUpperCase().startsWith(m.toString().toUpperCase()))
-				return m;
-		}
-		return SubModel.NoSubmodel;
+		SubModel m = SUB_MODELS.get(string.trim().toUpperCase());
+		return m == null ? SubModel.NoSubmodel : m;
 	}	
 	
 }
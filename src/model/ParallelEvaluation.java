@@ -0,0 +1,78 @@
+package model;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+
+/**
+ * @author KarelPetranek
+ * Evaluates answers of many students concurrently on a fork/join pool. Every student
+ * is evaluated by its own {@link Evaluation}, so the scores are the same as when evaluated one by one.
+ */
+public class ParallelEvaluation {
+	/**
+	 * Number of students evaluated by one task without further splitting
+	 */
+	private static final int STUDENTS_PER_TASK = 32;
+	
+	private ForkJoinPool pool;
+	
+	private static class EvaluationTask extends RecursiveAction  {
+		private static final long serialVersionUID = 1L;
+		
+		List<Question> questions;
+		Answer[][] answers;
+		int[] evals;
+		int from, to;
+		
+		EvaluationTask(List<Question> questions, Answer[][] answers, int[] evals, int from, int to)  {
+			this.questions = questions;
+			this.answers = answers;
+			this.evals = evals;
+			this.from = from;
+			this.to = to;
+		}
+		
+		@Override
+		protected void compute()  {
+			if (to - from <= STUDENTS_PER_TASK)  {
+				for (int i = from; i < to; i++)
+					evals[i] = new Evaluation().evaluate(questions, answers[i]);
+				return;
+			}
+			
+			int middle = (from + to) >>> 1;
+			invokeAll(new EvaluationTask(questions, answers, evals, from, middle),
+					new EvaluationTask(questions, answers, evals, middle, to));
+		}
+	}
+	
+	/**
+	 * Creates a new parallel evaluation
+	 * @param parallelism Number of threads used for the evaluation
+	 */
+	public ParallelEvaluation(int parallelism)  {
+		pool = new ForkJoinPool(parallelism);
+	}
+	
+	/**
+	 * Evaluates answers of all given students
+	 * @param questions List of questions in the test
+	 * @param answers Answers of each student indexed by question ID
+	 * @return Evaluation of each student, in the order of the given answers
+	 * @see Evaluation#evaluate(List, Answer[])
+	 */
+	public int[] evaluate(List<Question> questions, List<Answer[]> answers)  {
+		Answer[][] students = answers.toArray(new Answer[answers.size()][]);
+		int[] evals = new int[students.length];
+		pool.invoke(new EvaluationTask(questions, students, evals, 0, students.length));
+		return evals;
+	}
+	
+	/**
+	 * Stops the worker threads. The instance cannot be used afterwards.
+	 */
+	public void shutdown()  {
+		pool.shutdown();
+	}
+}
@@ -1,6 +1,9 @@
 package model;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 
 /**
@@ -15,28 +18,136 @@ public class Question {
 	List<ModelsAndAnswer> answerModels;
 	
 	/**
-	 * Creates a new question and fills it with correct answers
+	 * Models of a reference answer together with their accumulator slot mask
+	 */
+	private static class IndexEntry  {
+		List<Model> models;
+		long slotMask;
+		int answerId;
+		
+		IndexEntry(List<Model> models, int answerId)  {
+			this.models = models;
+			this.slotMask = Model.slotMask(models);
+			this.answerId = answerId;
+		}
+	}
+	
+	/**
+	 * Index of reference answers. Answer hash code doesn't depend on the order of choices,
+	 * so the lookup of a student answer is a single hash lookup.
+	 */
+	Map<Answer, IndexEntry> modelIndex;
+	
+	/**
+	 * Slot masks of reference answers by answer ID, ID 0 is reserved for answers without models
+	 */
+	long[] slotMasksById;
+	
+	/**
+	 * A problem of the answer key found when the question is built
+	 */
+	public static class Issue  {
+		/**
+		 * Kinds of problems
+		 */
+		@SuppressWarnings("javadoc")
+		public enum Kind  {
+			DUPLICATE_ANSWER,
+			EMPTY_ANSWER,
+			NO_MODELS
+		}
+		
+		private final Kind kind;
+		private final int index;
+		private final String message;
+		
+		Issue(Kind kind, int index, String message)  {
+			this.kind = kind;
+			this.index = index;
+			this.message = message;
+		}
+		
+		/**
+		 * @return Kind of the problem
+		 */
+		public Kind getKind()  {
+			return kind;
+		}
+		
+		/**
+		 * @return Index of the reference answer in the list given to the constructor
+		 */
+		public int getIndex()  {
+			return index;
+		}
+		
+		/**
+		 * @return Description of the problem
+		 */
+		public String getMessage()  {
+			return message;
+		}
+		
+		@Override
+		public String toString()  {
+			return kind + ": " + message;
+		}
+	}
+	
+	/**
+	 * Problems found when the question was built
+	 */
+	List<Issue> issues = new ArrayList<Issue>();
+	
+	/**
+	 * Creates a new question and fills it with correct answers. The answers are validated once here,
+	 * problems are available from {@link #getIssues()}.
 	 * @param id Question id
 	 * @param answerModels Models for correct answers
 	 */
 	public Question(int id, List<ModelsAndAnswer> answerModels)  {
 		this.id = id;
 		this.answerModels = new ArrayList<ModelsAndAnswer>(answerModels.size());
-		for (ModelsAndAnswer ma : answerModels)
-			addAnswerModels(ma);
+		this.modelIndex = new HashMap<Answer, IndexEntry>(answerModels.size() * 2);
+		for (int i = 0; i < answerModels.size(); i++)
+			addAnswerModels(answerModels.get(i), i);
+		
+		slotMasksById = new long[modelIndex.size() + 1];
+		for (IndexEntry entry : modelIndex.values())
+			slotMasksById[entry.answerId] = entry.slotMask;
 	}
 	
-	private void addAnswerModels(ModelsAndAnswer ma)  {
+	private void addAnswerModels(ModelsAndAnswer ma, int index)  {
 		if (ma.answer.getChoiceCount() < 1)  {
-			System.out.println("Warning: the given reference answer doesn't have any models assigned");
+			issues.add(new Issue(Issue.Kind.EMPTY_ANSWER, index, "reference answer " + (index + 1) + " of question " + id + " has no valid choices"));
 			return;
 		}
 		
 		ma.answer.setQuestionId(id); // Just to be sure, the caller should've already set this
 		
+		if (Model.slotMask(ma.models) == 0)
+			issues.add(new Issue(Issue.Kind.NO_MODELS, index, "reference answer " + (index + 1) + " of question " + id + " has no models: " + ma.models));
+		
+		// When the same answer is listed more times, the last one wins
+		IndexEntry entry = new IndexEntry(ma.models, modelIndex.size() + 1);
+		IndexEntry previous = modelIndex.put(ma.answer, entry);
+		if (previous != null)  {
+			entry.answerId = previous.answerId;
+			issues.add(new Issue(Issue.Kind.DUPLICATE_ANSWER, index, "reference answer " + (index + 1) + " of question " + id
+					+ " repeats an earlier answer, models " + ma.models + " replace " + previous.models));
+		}
+		
 		answerModels.add(ma);
 	}
 	
+	/**
+	 * Returns problems of the reference answers found when the question was built
+	 * @return Unmodifiable list of issues, empty when the answers are valid
+	 */
+	public List<Issue> getIssues()  {
+		return Collections.unmodifiableList(issues);
+	}
+	
 	/**
 	 * Question ID
 	 * @return Question ID
@@ -46,37 +157,60 @@ public class Question {
 	}
 	
 	private List<Model> modelsForSingleAnswer(Answer answer)  {
-		List<Model> result = new ArrayList<Model>();
-		
-		Answer currentAnswer = null;
-		int currentIndex = 0;
-		int i = 0;
-		for (ModelsAndAnswer m : answerModels)  {
-			if (m.answer.equals(answer))  {
-				if (currentAnswer != null)  {
-					System.out.println("Warning: duplicate answer for question " + id + ". Index 1: " + i + ", index 2: " + currentIndex + ".\nAnswer: " + m.answer.toString() + "Model 1: " + result.toString() + ", model 2: " + m.models.toString());
-				}
-				currentAnswer = m.answer;
-				currentIndex = i;
-				result = m.models;
-			}
-			i++;
-		}
+		IndexEntry result = modelIndex.get(answer);
+		return result == null ? Collections.<Model>emptyList() : result.models;
+	}
+	
+	/**
+	 * Returns bitmask of accumulator slots of the models that correspond to the given answer.
+	 * @param answer The student answer
+	 * @return Slot mask or 0 if no models match the answer
+	 * @see Model#getSlotMask()
+	 */
+	public long slotMaskForAnswer(Answer answer)  {
+		if (answer.getQuestionId() != id)
+			return 0;
 		
-		return result;
+		IndexEntry result = modelIndex.get(answer);
+		return result == null ? 0 : result.slotMask;
+	}
+	
+	/**
+	 * Returns compact ID of the reference answer equal to the given answer. IDs are numbered from 1
+	 * in the order of reference answers and stay the same for the same answer key.
+	 * @param answer The student answer
+	 * @return Answer ID or 0 if no models match the answer
+	 * @see #slotMaskForAnswerId(int)
+	 */
+	public int answerIdOf(Answer answer)  {
+		if (answer.getQuestionId() != id)
+			return 0;
+		
+		IndexEntry result = modelIndex.get(answer);
+		return result == null ? 0 : result.answerId;
+	}
+	
+	/**
+	 * Returns bitmask of accumulator slots of the reference answer with the given ID
+	 * @param answerId Answer ID returned by {@link #answerIdOf(Answer)}
+	 * @return Slot mask or 0 for unknown IDs
+	 */
+	public long slotMaskForAnswerId(int answerId)  {
+		if (answerId <= 0 || answerId >= slotMasksById.length)
+			return 0;
+		return slotMasksById[answerId];
 	}
 	
 	/**
 	 * Returns list of models that correspond to the given answer.
 	 * @param answer The student answer
-	 * @return Corresponding models or an empty list if no models match the answer
+	 * @return Corresponding models or an empty list if no models match the answer,
+	 * null if the answer belongs to another question
 	 */
 	public List<Model> modelsForAnswer(Answer answer)  {
 	
-		if (answer.getQuestionId() != id)  {
-			System.out.println("Warning: the given answer with id=" + answer.getQuestionId() + " does not match the question id " + id);
+		if (answer.getQuestionId() != id)
 			return null;
-		}
 			
 		List<Model> result = modelsForSingleAnswer(answer);
 		
@@ -0,0 +1,228 @@
+package store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * @author Pavel Janecka, Karel Petranek
+ * On-disk columnar store of encoded student answers. Every (student, question) pair has one int slot
+ * with the ID of the matching reference answer (see {@link model.Question#answerIdOf(model.Answer)}), 0 when
+ * the answer has no models. Slots are stored question by question, followed by the scores of the students.
+ * The columns are memory mapped, so the store can be much larger than the heap.
+ * <p>
+ * Layout: magic, version, student count, question count, key hash length, key hash (UTF-8),
+ * question IDs, padding to 8 bytes, columns, scores. All values are big-endian ints.
+ */
+public class AnswerStore {
+	private static final int MAGIC = 0x44535452; // "DSTR"
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final String keyHash;
+	private final int studentCount;
+	private final int[] questionIds;
+	private final IntBuffer[] columns;
+	private final IntBuffer scores;
+	
+	private AnswerStore(RandomAccessFile file, String keyHash, int studentCount, int[] questionIds, long dataOffset) throws IOException  {
+		this.file = file;
+		this.channel = file.getChannel();
+		this.keyHash = keyHash;
+		this.studentCount = studentCount;
+		this.questionIds = questionIds;
+		
+		// One mapping per column, a single mapping is limited to 2 GB
+		long columnBytes = 4L * studentCount;
+		columns = new IntBuffer[questionIds.length];
+		for (int i = 0; i < questionIds.length; i++)
+			columns[i] = map(dataOffset + i * columnBytes, columnBytes);
+		scores = map(dataOffset + questionIds.length * columnBytes, columnBytes);
+	}
+	
+	private IntBuffer map(long offset, long length) throws IOException  {
+		MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, offset, length);
+		return buffer.asIntBuffer();
+	}
+	
+	private static long dataOffset(byte[] hash, int questionCount)  {
+		long headerSize = 5 * 4 + hash.length + 4L * questionCount;
+		return (headerSize + 7) & ~7L;
+	}
+	
+	/**
+	 * Creates a new store, all answer IDs and scores are 0. An existing file is overwritten.
+	 * @param path Path to the store file
+	 * @param keyHash Hash of the answer key the answer IDs belong to
+	 * @param questionIds IDs of the stored questions, one column each
+	 * @param studentCount Number of students
+	 * @return The created store
+	 * @throws IOException When the file cannot be created
+	 */
+	public static AnswerStore create(File path, String keyHash, int[] questionIds, int studentCount) throws IOException  {
+		byte[] hash = keyHash.getBytes(UTF8);
+		long dataOffset = dataOffset(hash, questionIds.length);
+		
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try  {
+			file.setLength(0);
+			ByteBuffer header = ByteBuffer.allocate((int) dataOffset);
+			header.putInt(MAGIC).putInt(VERSION).putInt(studentCount).putInt(questionIds.length).putInt(hash.length).put(hash);
+			for (int id : questionIds)
+				header.putInt(id);
+			header.rewind();
+			file.getChannel().write(header, 0);
+			file.setLength(dataOffset + 4L * studentCount * (questionIds.length + 1));
+			return new AnswerStore(file, keyHash, studentCount, questionIds.clone(), dataOffset);
+		} catch (IOException e)  {
+			file.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Opens an existing store
+	 * @param path Path to the store file
+	 * @return The opened store
+	 * @throws IOException When the file cannot be read or is not a store
+	 */
+	public static AnswerStore open(File path) throws IOException  {
+		RandomAccessFile file = new RandomAccessFile(path, "rw");
+		try  {
+			if (file.readInt() != MAGIC || file.readInt() != VERSION)
+				throw new IOException("File " + path + " is not an answer store");
+			int studentCount = file.readInt();
+			int questionCount = file.readInt();
+			byte[] hash = new byte[file.readInt()];
+			file.readFully(hash);
+			int[] questionIds = new int[questionCount];
+			for (int i = 0; i < questionCount; i++)
+				questionIds[i] = file.readInt();
+			
+			long dataOffset = dataOffset(hash, questionCount);
+			if (file.length() < dataOffset + 4L * studentCount * (questionCount + 1))
+				throw new IOException("Answer store " + path + " is truncated");
+			return new AnswerStore(file, new String(hash, UTF8), studentCount, questionIds, dataOffset);
+		} catch (IOException e)  {
+			file.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * @return Hash of the answer key the answer IDs belong to
+	 */
+	public String getKeyHash()  {
+		return keyHash;
+	}
+	
+	/**
+	 * @return Number of students
+	 */
+	public int getStudentCount()  {
+		return studentCount;
+	}
+	
+	/**
+	 * @return Number of question columns
+	 */
+	public int getQuestionCount()  {
+		return questionIds.length;
+	}
+	
+	/**
+	 * @param column Column index
+	 * @return ID of the question stored in the given column
+	 */
+	public int getQuestionId(int column)  {
+		return questionIds[column];
+	}
+	
+	/**
+	 * Returns index of the column of the given question
+	 * @param questionId Question ID
+	 * @return Column index or -1 if the question is not stored
+	 */
+	public int columnOf(int questionId)  {
+		for (int i = 0; i < questionIds.length; i++)  {
+			if (questionIds[i] == questionId)
+				return i;
+		}
+		return -1;
+	}
+	
+	/**
+	 * @param student Student index
+	 * @param column Column index
+	 * @return Answer ID of the student
+	 */
+	public int getAnswerId(int student, int column)  {
+		return columns[column].get(student);
+	}
+	
+	/**
+	 * @param student Student index
+	 * @param column Column index
+	 * @param answerId Answer ID of the student
+	 */
+	public void setAnswerId(int student, int column, int answerId)  {
+		columns[column].put(student, answerId);
+	}
+	
+	/**
+	 * Copies answer IDs of a block of students of one column to a part of an array
+	 * @param column Column index
+	 * @param firstStudent Index of the first student
+	 * @param target Receives the answer IDs
+	 * @param offset Index in target of the first student
+	 * @param length Number of copied students
+	 */
+	public void getAnswerIds(int column, int firstStudent, int[] target, int offset, int length)  {
+		IntBuffer buffer = columns[column].duplicate();
+		buffer.position(firstStudent);
+		buffer.get(target, offset, length);
+	}
+	
+	/**
+	 * @param student Student index
+	 * @return Score of the student
+	 */
+	public int getScore(int student)  {
+		return scores.get(student);
+	}
+	
+	/**
+	 * @param student Student index
+	 * @param score Score of the student
+	 */
+	public void setScore(int student, int score)  {
+		scores.put(student, score);
+	}
+	
+	/**
+	 * Copies scores of a block of students to the store
+	 * @param firstStudent Index of the first student
+	 * @param source Scores, its length is the number of copied students
+	 */
+	public void setScores(int firstStudent, int[] source)  {
+		IntBuffer buffer = scores.duplicate();
+		buffer.position(firstStudent);
+		buffer.put(source);
+	}
+	
+	/**
+	 * Writes changes to the disk and closes the file
+	 * @throws IOException When the file cannot be written
+	 */
+	public void close() throws IOException  {
+		channel.force(false);
+		file.close();
+	}
+}
@@ -0,0 +1,55 @@
+package store;
+
+import java.util.List;
+
+import model.Evaluation;
+import model.Question;
+
+/**
+ * @author Pavel Janecka, Karel Petranek
+ * Evaluates all students of an {@link AnswerStore} and writes their scores back to the store.
+ * Students are processed in blocks, each column of the block is read sequentially and no {@link model.Answer}
+ * objects are created. The block is scored by {@link Evaluation#evaluateColumns(Question[], int[], int, int, int[], int)},
+ * so the scores are the same as of {@link Evaluation#evaluate(List, model.Answer[])}.
+ */
+public class StoreEvaluation {
+	/**
+	 * Number of students evaluated at once, the answer IDs of the block fit in the CPU cache
+	 */
+	private static final int STUDENTS_PER_BLOCK = 1024;
+	
+	/**
+	 * Evaluates all students of the store
+	 * @param store Store with answer IDs of the given questions
+	 * @param questions The questions the answer IDs were encoded with
+	 * @param keyHash Hash of the questions, see {@link model.AnswerKeyCodec#hashOf(List)}
+	 * @throws IllegalArgumentException When the store was created for a different answer key
+	 */
+	public static void evaluate(AnswerStore store, List<Question> questions, String keyHash) throws IllegalArgumentException  {
+		if (!store.getKeyHash().equals(keyHash))
+			throw new IllegalArgumentException("Answer store was created for a different answer key");
+		
+		// Columns of the questions, questions without a column are not answered by anyone
+		Question[] columnQuestions = new Question[store.getQuestionCount()];
+		for (Question q : questions)  {
+			int column = store.columnOf(q.getId());
+			if (column >= 0)
+				columnQuestions[column] = q;
+		}
+		
+		int[] columns = new int[columnQuestions.length * STUDENTS_PER_BLOCK];
+		int[] scores = new int[STUDENTS_PER_BLOCK];
+		for (int first = 0; first < store.getStudentCount(); first += STUDENTS_PER_BLOCK)  {
+			int count = Math.min(STUDENTS_PER_BLOCK, store.getStudentCount() - first);
+			if (count < scores.length)
+				scores = new int[count];
+			
+			for (int column = 0; column < columnQuestions.length; column++)  {
+				if (columnQuestions[column] != null)
+					store.getAnswerIds(column, first, columns, column * STUDENTS_PER_BLOCK, count);
+			}
+			Evaluation.evaluateColumns(columnQuestions, columns, STUDENTS_PER_BLOCK, count, scores, 0);
+			store.setScores(first, scores);
+		}
+	}
+}
@@ -0,0 +1,142 @@
+package app;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.ss.usermodel.Cell;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+import excel.ExcelSheetSnapshot;
+import excel.ExcelWorkbook;
+
+/**
+ * @author Karel Petranek
+ * Answers computed by a formula are evaluated the same way with and without streaming read
+ */
+public class FormulaAnswerTest extends TestCase {
+	private static final String SAMPLE = "data/Sample_data.xlsx";
+	
+	private File dir;
+	
+	@Override
+	protected void setUp() throws IOException  {
+		dir = File.createTempFile("formula", "");
+		dir.delete();
+		dir.mkdir();
+	}
+	
+	@Override
+	protected void tearDown()  {
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+	
+	public void testFormulaAnswerInBothReadModes() throws Exception  {
+		File input = new File(dir, "formula.xlsx");
+		String answer = replaceAnswerWithFormula(input);
+		assertFalse(answer.isEmpty());
+		
+		double[] expected = evaluate(SAMPLE, false);
+		assertTrue(Arrays.equals(expected, evaluate(input.getPath(), false)));
+		assertTrue(Arrays.equals(expected, evaluate(input.getPath(), true)));
+	}
+	
+	public void testFormulaValueInSnapshots() throws Exception  {
+		File input = new File(dir, "formula.xlsx");
+		String answer = replaceAnswerWithFormula(input);
+		
+		ExcelWorkbook dom = new ExcelWorkbook(input.getPath());
+		ExcelWorkbook readOnly = ExcelWorkbook.openReadOnly(input.getPath());
+		try {
+			ExcelSheetSnapshot a = dom.getSheetByName("Results").snapshot();
+			ExcelSheetSnapshot b = readOnly.getSheetByName("Results").snapshot();
+			assertEquals(answer, a.stringAt(1, firstQuestionRow(a)));
+			assertEquals(answer, b.stringAt(1, firstQuestionRow(b)));
+		} finally {
+			dom.close();
+			readOnly.close();
+		}
+	}
+	
+	/**
+	 * Copies the sample workbook to the given file with the first answer of the first student
+	 * replaced by a formula returning the same text, with its cached value
+	 */
+	private String replaceAnswerWithFormula(File output) throws IOException  {
+		XSSFWorkbook workbook = new XSSFWorkbook(new FileInputStream(SAMPLE));
+		Sheet sheet = workbook.getSheet("Results");
+		String answer = "";
+		for (Row row : sheet)  {
+			Cell corner = row.getCell(0);
+			Cell cell = row.getCell(1);
+			if (corner == null || cell == null || !corner.getStringCellValue().startsWith("#"))
+				continue;
+			answer = cell.getStringCellValue();
+			cell.setCellFormula("\"" + answer + "\"");
+			workbook.getCreationHelper().createFormulaEvaluator().evaluateFormulaCell(cell);
+			break;
+		}
+		FileOutputStream os = new FileOutputStream(output);
+		try {
+			workbook.write(os);
+		} finally {
+			os.close();
+		}
+		return answer;
+	}
+	
+	private double[] evaluate(String input, boolean streamingRead) throws Exception  {
+		EvaluationOptions options = new EvaluationOptions();
+		options.setStreamingRead(streamingRead);
+		EvaluationMain evaluation = new EvaluationMain(options);
+		File output = new File(dir, (streamingRead ? "streaming_" : "dom_") + new File(input).getName());
+		try {
+			evaluation.evaluate(input, output.getPath());
+		} finally {
+			evaluation.shutdown();
+		}
+		
+		int resultRow = resultRow(input);
+		ExcelWorkbook workbook = ExcelWorkbook.openReadOnly(output.getPath());
+		try {
+			ExcelSheetSnapshot sheet = workbook.getSheetByName("Results").snapshot();
+			double[] res = new double[sheet.getColumnCount() - 1];
+			for (int x = 1; x < sheet.getColumnCount(); x++)
+				res[x - 1] = sheet.numberAt(x, resultRow);
+			return res;
+		} finally {
+			workbook.close();
+		}
+	}
+	
+	private static int resultRow(String input) throws IOException  {
+		ExcelWorkbook workbook = ExcelWorkbook.openReadOnly(input);
+		try {
+			ExcelSheetSnapshot sheet = workbook.getSheetByName("Results").snapshot();
+			for (int y = 0; y < sheet.getRowCount(); y++)  {
+				if (sheet.stringAt(0, y).equalsIgnoreCase("Results"))
+					return y;
+			}
+		} finally {
+			workbook.close();
+		}
+		fail("No result row in " + input);
+		return -1;
+	}
+	
+	private static int firstQuestionRow(ExcelSheetSnapshot sheet)  {
+		for (int y = 0; y < sheet.getRowCount(); y++)  {
+			if (sheet.stringAt(0, y).startsWith("#"))
+				return y;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,54 @@
+package csv;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Karel Petranek
+ * Tests of {@link CsvReader}
+ */
+public class CsvReaderTest extends TestCase {
+	
+	public void testByteOrderMarkIsSkipped() throws IOException  {
+		CsvReader reader = new CsvReader(new StringReader("\uFEFFCode,S1,S2\n#1,\"1,2|3,4\",5,6\n"), ',');
+		assertTrue(reader.next());
+		assertEquals("Code", reader.get(0));
+		assertEquals(3, reader.getTrimmedFieldCount());
+		assertTrue(reader.next());
+		assertEquals("#1", reader.get(0));
+		assertEquals("1,2|3,4", reader.get(1));
+		assertFalse(reader.next());
+	}
+	
+	public void testUtf8FileWithByteOrderMark() throws IOException  {
+		byte[] bom = { (byte) 0xEF, (byte) 0xBB, (byte) 0xBF };
+		byte[] data = "Code\tS1\n#1\t1,2\n".getBytes("UTF-8");
+		byte[] file = new byte[bom.length + data.length];
+		System.arraycopy(bom, 0, file, 0, bom.length);
+		System.arraycopy(data, 0, file, bom.length, data.length);
+		
+		CsvReader reader = new CsvReader(new InputStreamReader(new ByteArrayInputStream(file), "UTF-8"), '\t');
+		assertTrue(reader.next());
+		assertEquals("Code", reader.get(0));
+		assertEquals(0, reader.getRecordIndex());
+		assertTrue(reader.next());
+		assertEquals("1,2", reader.get(1));
+	}
+	
+	public void testByteOrderMarkOnlyInFirstRecord() throws IOException  {
+		CsvReader reader = new CsvReader(new StringReader("Code\tS1\n\uFEFF#1\t1,2\n"), '\t');
+		assertTrue(reader.next());
+		assertEquals("Code", reader.get(0));
+		assertTrue(reader.next());
+		assertEquals("\uFEFF#1", reader.get(0));
+	}
+	
+	public void testEmptyStreamWithByteOrderMark() throws IOException  {
+		CsvReader reader = new CsvReader(new StringReader("\uFEFF"), ',');
+		assertFalse(reader.next());
+	}
+}
@@ -0,0 +1,156 @@
+package excel;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.usermodel.XSSFSheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+
+/**
+ * @author Karel Petranek
+ * Workbooks patched in place are read back by POI with the replaced rows, dimension and row heights
+ */
+public class XlsxPatcherTest extends TestCase {
+	private static final String SAMPLE = "data/Sample_data.xlsx";
+	private static final String CALC_CHAIN = "xl/calcChain.xml";
+	private static final int ROW = 13;
+	private static final int COLUMNS = 25;
+	
+	private File dir;
+	
+	@Override
+	protected void setUp() throws IOException  {
+		dir = File.createTempFile("patcher", "");
+		dir.delete();
+		dir.mkdir();
+	}
+	
+	@Override
+	protected void tearDown()  {
+		for (File f : dir.listFiles())
+			f.delete();
+		dir.delete();
+	}
+	
+	public void testPatchedWorkbookIsReadable() throws Exception  {
+		File input = new File(dir, "input.xlsx");
+		File output = new File(dir, "output.xlsx");
+		prepareInput(input);
+		
+		double[] values = new double[COLUMNS];
+		int[] styles = new int[COLUMNS];
+		XlsxPatcher patcher = new XlsxPatcher(input.getPath());
+		try {
+			int red = patcher.addFontStyle((short) 10);
+			for (int i = 0; i < COLUMNS; i++)  {
+				values[i] = i % 3 == 0 ? i + 0.5 : i;
+				styles[i] = i % 2 == 0 ? red : 0;
+			}
+			patcher.replaceRow("Results", ROW, 1, values, styles);
+			patcher.write(output.getPath());
+		} finally {
+			patcher.close();
+		}
+		
+		FileInputStream in = new FileInputStream(output);
+		try {
+			XSSFSheet sheet = new XSSFWorkbook(in).getSheet("Results");
+			Row row = sheet.getRow(ROW);
+			assertEquals(30f, row.getHeightInPoints());
+			for (int i = 0; i < COLUMNS; i++)
+				assertEquals(values[i], row.getCell(i + 1).getNumericCellValue());
+			assertEquals("A1:Z34", sheet.getCTWorksheet().getDimension().getRef());
+		} finally {
+			in.close();
+		}
+		
+		ZipFile zip = new ZipFile(output);
+		try {
+			assertNull(zip.getEntry(CALC_CHAIN));
+			assertFalse(readText(zip, "[Content_Types].xml").contains("calcChain"));
+			assertFalse(readText(zip, "xl/_rels/workbook.xml.rels").contains("calcChain"));
+		} finally {
+			zip.close();
+		}
+	}
+	
+	public void testUnpatchedWorkbookKeepsCalcChain() throws Exception  {
+		File input = new File(dir, "input.xlsx");
+		File output = new File(dir, "output.xlsx");
+		prepareInput(input);
+		
+		XlsxPatcher patcher = new XlsxPatcher(input.getPath());
+		try {
+			patcher.write(output.getPath());
+		} finally {
+			patcher.close();
+		}
+		
+		ZipFile zip = new ZipFile(output);
+		try {
+			assertNotNull(zip.getEntry(CALC_CHAIN));
+			assertTrue(readText(zip, "xl/_rels/workbook.xml.rels").contains("calcChain"));
+		} finally {
+			zip.close();
+		}
+	}
+	
+	/**
+	 * Copies the sample with a custom height of the patched row and a calculation chain
+	 */
+	private static void prepareInput(File input) throws IOException  {
+		ZipInputStream in = new ZipInputStream(new FileInputStream(SAMPLE));
+		ZipOutputStream out = new ZipOutputStream(new FileOutputStream(input));
+		try {
+			ZipEntry entry;
+			while ((entry = in.getNextEntry()) != null)  {
+				String text = new String(readFully(in), "UTF-8");
+				if (entry.getName().equals("xl/worksheets/sheet1.xml"))
+					text = text.replace("<row r=\"" + (ROW + 1) + "\"", "<row r=\"" + (ROW + 1) + "\" ht=\"30\" customHeight=\"1\"");
+				else if (entry.getName().equals("[Content_Types].xml"))
+					text = text.replace("</Types>", "<Override PartName=\"/" + CALC_CHAIN + "\" ContentType=\"application/vnd.openxmlformats-officedocument.spreadsheetml.calcChain+xml\"/></Types>");
+				else if (entry.getName().equals("xl/_rels/workbook.xml.rels"))
+					text = text.replace("</Relationships>", "<Relationship Id=\"rId99\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/calcChain\" Target=\"calcChain.xml\"/></Relationships>");
+				out.putNextEntry(new ZipEntry(entry.getName()));
+				out.write(text.getBytes("UTF-8"));
+				out.closeEntry();
+			}
+			out.putNextEntry(new ZipEntry(CALC_CHAIN));
+			out.write(("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>\n"
+				+ "<calcChain xmlns=\"http://schemas.openxmlformats.org/spreadsheetml/2006/main\"><c r=\"B" + (ROW + 1) + "\" i=\"1\"/></calcChain>").getBytes("UTF-8"));
+			out.closeEntry();
+		} finally {
+			in.close();
+			out.close();
+		}
+	}
+	
+	private static String readText(ZipFile zip, String name) throws IOException  {
+		InputStream in = zip.getInputStream(zip.getEntry(name));
+		try {
+			return new String(readFully(in), "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+	
+	private static byte[] readFully(InputStream in) throws IOException  {
+		ByteArrayOutputStream res = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = in.read(buffer)) >= 0)
+			res.write(buffer, 0, read);
+		return res.toByteArray();
+	}
+}
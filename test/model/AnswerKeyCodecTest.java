@@ -0,0 +1,98 @@
+package model;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Karel Petranek
+ * Tests of {@link AnswerKeyCodec}
+ */
+public class AnswerKeyCodecTest extends TestCase {
+	private static final String HASH = "hash";
+	
+	private File file;
+	
+	@Override
+	protected void setUp() throws IOException  {
+		file = File.createTempFile("answers", ".keycache");
+	}
+	
+	@Override
+	protected void tearDown()  {
+		file.delete();
+	}
+	
+	private static List<Question> key()  {
+		List<Question> questions = new ArrayList<Question>();
+		for (int id = 1; id <= 3; id++)  {
+			List<ModelsAndAnswer> answers = new ArrayList<ModelsAndAnswer>();
+			answers.add(new ModelsAndAnswer(new Answer("10,20", id), Model.parseModels("M1")));
+			answers.add(new ModelsAndAnswer(new Answer("20,10|10,10", id), Model.parseModels("M2|M3,S1")));
+			questions.add(new Question(id, answers));
+		}
+		return questions;
+	}
+	
+	public void testRoundTrip() throws IOException  {
+		List<Question> questions = key();
+		AnswerKeyCodec.write(file, HASH, questions);
+		List<Question> read = AnswerKeyCodec.read(file, HASH);
+		assertNotNull(read);
+		assertEquals(AnswerKeyCodec.hashOf(questions), AnswerKeyCodec.hashOf(read));
+		assertNull(AnswerKeyCodec.read(file, "other"));
+	}
+	
+	public void testTruncatedFile() throws IOException  {
+		AnswerKeyCodec.write(file, HASH, key());
+		long length = file.length();
+		for (long size = length - 1; size > 0; size -= 7)  {
+			truncate(size);
+			assertNull("size " + size, AnswerKeyCodec.read(file, HASH));
+		}
+	}
+	
+	public void testDamagedCounts() throws IOException  {
+		AnswerKeyCodec.write(file, HASH, key());
+		// Question count follows magic, version and the hash
+		long countOffset = 4 + 4 + 2 + HASH.length();
+		int[] counts = { -1, Integer.MAX_VALUE, 1 << 28 };
+		for (int count : counts)  {
+			writeInt(countOffset, count);
+			assertNull(AnswerKeyCodec.read(file, HASH));
+			// Answer count of the first question, after its id
+			writeInt(countOffset, 3);
+			writeInt(countOffset + 8, count);
+			assertNull(AnswerKeyCodec.read(file, HASH));
+			// Choice count of the first answer
+			writeInt(countOffset + 8, 2);
+			writeInt(countOffset + 12, count);
+			assertNull(AnswerKeyCodec.read(file, HASH));
+			writeInt(countOffset + 12, 1);
+		}
+		assertNotNull(AnswerKeyCodec.read(file, HASH));
+	}
+	
+	private void truncate(long size) throws IOException  {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try  {
+			raf.setLength(size);
+		} finally  {
+			raf.close();
+		}
+	}
+	
+	private void writeInt(long offset, int value) throws IOException  {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try  {
+			raf.seek(offset);
+			raf.writeInt(value);
+		} finally  {
+			raf.close();
+		}
+	}
+}
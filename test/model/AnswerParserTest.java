@@ -0,0 +1,125 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Karel Petranek
+ * {@link AnswerParser} parses answers the same way as {@link Answer#Answer(String, int)}
+ */
+public class AnswerParserTest extends TestCase {
+	private static final int STRINGS = 20000;
+	private static final String NOISE = "0123456789,|.- x";
+	
+	/**
+	 * Appends a variable, sometimes padded with spaces or with a zero fraction as numeric cells are converted
+	 */
+	private static void appendVariable(StringBuilder res, int value, Random random)  {
+		if (random.nextInt(8) == 0)
+			res.append(' ');
+		res.append(value);
+		if (random.nextInt(8) == 0)
+			res.append(".0");
+		if (random.nextInt(8) == 0)
+			res.append(' ');
+	}
+	
+	private static int randomValue(Random random)  {
+		switch (random.nextInt(20))  {
+			case 0:
+				return Answer.MIN_VARIABLE;
+			case 1:
+				return Answer.MAX_VARIABLE;
+			case 2:
+				return -random.nextInt(100);
+			default:
+				return 10 * random.nextInt(4);
+		}
+	}
+	
+	/**
+	 * Writes random choices to the string and the packed choices with two or three variables to the list
+	 */
+	private static String randomAnswer(Random random, List<Long> choices)  {
+		StringBuilder res = new StringBuilder();
+		int count = random.nextInt(4);
+		for (int c = 0; c < count; c++)  {
+			if (c > 0)
+				res.append('|');
+			// A choice with a wrong number of variables is skipped
+			int variables = random.nextInt(10) == 0 ? (random.nextBoolean() ? 1 : 4) : 2 + random.nextInt(2);
+			int[] values = new int[variables];
+			for (int v = 0; v < variables; v++)  {
+				values[v] = randomValue(random);
+				if (v > 0)
+					res.append(',');
+				appendVariable(res, values[v], random);
+			}
+			if (variables == 2 || variables == 3)
+				choices.add(Answer.pack(values[0], values[1], variables == 3 ? values[2] : Answer.NO_VARIABLE));
+		}
+		if (random.nextInt(10) == 0)
+			res.append('|');
+		return res.toString();
+	}
+	
+	/**
+	 * @return Answer parsed by the constructor or null when it rejects the string
+	 */
+	private static Answer construct(String input, int questionId)  {
+		try {
+			return new Answer(input, questionId);
+		} catch (NumberFormatException e)  {
+			return null;
+		}
+	}
+	
+	public void testWellFormedAnswers()  {
+		Random random = new Random(11);
+		AnswerParser parser = new AnswerParser();
+		for (int i = 0; i < STRINGS; i++)  {
+			List<Long> choices = new ArrayList<Long>();
+			String input = randomAnswer(random, choices);
+			long[] packed = new long[choices.size()];
+			for (int c = 0; c < packed.length; c++)
+				packed[c] = choices.get(c);
+			
+			Answer expected = new Answer(packed, i);
+			Answer parsed = parser.parse(input, i);
+			assertEquals(input, AnswerParser.ERROR_NONE, parser.getErrorCode());
+			assertEquals(input, expected, parsed);
+			assertEquals(input, expected, construct(input, i));
+		}
+	}
+	
+	public void testMalformedAnswers()  {
+		Random random = new Random(13);
+		AnswerParser parser = new AnswerParser();
+		int malformed = 0;
+		for (int i = 0; i < STRINGS; i++)  {
+			StringBuilder input = new StringBuilder(randomAnswer(random, new ArrayList<Long>()));
+			for (int n = random.nextInt(3); n >= 0; n--)
+				input.insert(random.nextInt(input.length() + 1), NOISE.charAt(random.nextInt(NOISE.length())));
+			if (random.nextInt(20) == 0)
+				input.append(random.nextBoolean() ? "," + ((long) Answer.MAX_VARIABLE + 1) : ",99999999999");
+			
+			Answer parsed = parser.parse(input, i);
+			assertEquals(input.toString(), construct(input.toString(), i), parsed);
+			assertEquals(input.toString(), parsed == null, parser.getErrorCode() != AnswerParser.ERROR_NONE);
+			if (parsed == null)
+				malformed++;
+		}
+		assertTrue(malformed > STRINGS / 10);
+	}
+	
+	public void testSkippedChoicesAreCounted()  {
+		AnswerParser parser = new AnswerParser();
+		assertEquals(1, parser.parse("10,20|5|1,2,3,4", 1).getChoiceCount());
+		assertEquals(2, parser.getSkippedChoices());
+		assertEquals(1, parser.parse("10,20,30|", 1).getChoiceCount());
+		assertEquals(2, parser.getSkippedChoices());
+	}
+}
@@ -0,0 +1,104 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * @author Karel Petranek
+ * {@link Evaluation#evaluateBatch(List, int[][])} scores a cohort the same way as {@link Evaluation#evaluate(List, Answer[])}
+ */
+public class EvaluationTest extends TestCase {
+	private static final int QUESTIONS = 14;
+	private static final int MISSING_QUESTION = 7;
+	private static final int REFERENCE_ANSWERS = 6;
+	// More than one block of the batch evaluation, the last block is not full
+	private static final int STUDENTS = 1000;
+	
+	private static String randomAnswer(Random random)  {
+		StringBuilder res = new StringBuilder();
+		int choices = 1 + random.nextInt(2);
+		for (int c = 0; c < choices; c++)  {
+			if (c > 0)
+				res.append('|');
+			res.append(10 * random.nextInt(3)).append(',').append(10 * random.nextInt(3));
+			if (random.nextInt(4) == 0)
+				res.append(',').append(10 * random.nextInt(3));
+		}
+		return res.toString();
+	}
+	
+	private static String randomModels(Random random)  {
+		// Half of the reference answers share a model, so that some students are consistent
+		StringBuilder res = new StringBuilder(random.nextBoolean() ? "M1,S1|" : "");
+		int models = 1 + random.nextInt(3);
+		for (int m = 0; m < models; m++)  {
+			if (m > 0)
+				res.append('|');
+			res.append('M').append(1 + random.nextInt(Model.MainModel.values().length - 1));
+			if (random.nextBoolean())
+				res.append(",S").append(1 + random.nextInt(Model.SubModel.values().length - 1));
+		}
+		return res.toString();
+	}
+	
+	private static List<Question> randomKey(Random random)  {
+		List<Question> questions = new ArrayList<Question>();
+		for (int id = 1; id <= QUESTIONS; id++)  {
+			if (id == MISSING_QUESTION)
+				continue;
+			List<ModelsAndAnswer> answers = new ArrayList<ModelsAndAnswer>();
+			for (int i = 0; i < REFERENCE_ANSWERS; i++)
+				answers.add(new ModelsAndAnswer(new Answer(randomAnswer(random), id), Model.parseModels(randomModels(random))));
+			questions.add(new Question(id, answers));
+		}
+		return questions;
+	}
+	
+	public void testBatchMatchesSingleEvaluation()  {
+		Random random = new Random(7);
+		List<Question> questions = randomKey(random);
+		AnswerParser parser = new AnswerParser();
+		
+		Answer[][] answers = new Answer[STUDENTS][QUESTIONS + 1];
+		int[][] answerIds = new int[STUDENTS][];
+		for (int s = 0; s < STUDENTS; s++)  {
+			// Some students have answer IDs only for a part of the questions
+			int answered = s % 97 == 0 ? random.nextInt(questions.size()) : questions.size();
+			answerIds[s] = new int[answered];
+			for (int q = 0; q < answered; q++)  {
+				Question question = questions.get(q);
+				int kind = random.nextInt(10);
+				Answer answer;
+				if (kind == 0)  {
+					answer = null; // missing
+				} else if (kind == 1)  {
+					answer = parser.parse("20,x", question.getId()); // malformed
+					assertNull(answer);
+				} else if (kind < 6)  {
+					answer = question.answerModels.get(random.nextInt(question.answerModels.size())).answer;
+				} else  {
+					answer = parser.parse(randomAnswer(random), question.getId());
+				}
+				answers[s][question.getId()] = answer;
+				answerIds[s][q] = answer == null ? 0 : question.answerIdOf(answer);
+			}
+		}
+		
+		int[] scores = Evaluation.evaluateBatch(questions, answerIds);
+		assertEquals(STUDENTS, scores.length);
+		for (int s = 0; s < STUDENTS; s++)
+			assertEquals("student " + s, new Evaluation().evaluate(questions, answers[s]), scores[s]);
+		
+		int max = 0;
+		for (int score : scores)
+			max = Math.max(max, score);
+		assertTrue("cohort has no consistent students", max >= Evaluation.CONSISTENT_SCORE);
+	}
+	
+	public void testEmptyCohort()  {
+		assertEquals(0, Evaluation.evaluateBatch(randomKey(new Random(1)), new int[0][]).length);
+	}
+}